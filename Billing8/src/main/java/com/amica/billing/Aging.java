@@ -0,0 +1,222 @@
+package com.amica.billing;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Accounts-receivable aging as of a given date: the unpaid amounts for
+ * each customer, and for the whole portfolio, in buckets by how many days
+ * past due they are under the customer's {@link Terms}. Amounts are kept
+ * in cents, in one array indexed by {@link CustomerDictionary customer id}
+ * and bucket, so that an aging can be built in a single pass over the
+ * invoices, or built in pieces and merged, and the buckets always add up
+ * to the totals exactly.
+ *
+ * An aging can share a dictionary that we only read, as the
+ * {@link Reporter} does; invoices for customers it doesn't know count
+ * toward the portfolio totals only. Otherwise we keep a dictionary
+ * of our own and add customers to it as we see them.
+ *
+ * @author Will Provost
+ */
+public class Aging {
+
+	/**
+	 * Aging buckets, by the greatest number of days past due they hold.
+	 */
+	public enum Bucket {
+		CURRENT(0),
+		DAYS_1_30(30),
+		DAYS_31_60(60),
+		DAYS_61_90(90),
+		OVER_90(Long.MAX_VALUE);
+
+		private long maxDays;
+
+		private Bucket(long maxDays) {
+			this.maxDays = maxDays;
+		}
+
+		public long getMaxDays() {
+			return maxDays;
+		}
+
+		/**
+		 * Returns the bucket for the given number of days past due.
+		 * Invoices that aren't due yet are current.
+		 */
+		public static Bucket of(long daysPastDue) {
+			for (Bucket bucket : BUCKETS) {
+				if (daysPastDue <= bucket.maxDays) {
+					return bucket;
+				}
+			}
+			return OVER_90;
+		}
+	}
+
+	private static final Bucket[] BUCKETS = Bucket.values();
+
+	private LocalDate asOf;
+	private CustomerDictionary dictionary;
+	private boolean ownDictionary;
+	private long[] amounts;
+	private BitSet owing = new BitSet();
+	private long[] totals = new long[BUCKETS.length];
+	private boolean sealed;
+
+	public Aging(LocalDate asOf) {
+		this(asOf, new CustomerDictionary());
+		ownDictionary = true;
+	}
+
+	/**
+	 * Builds an aging for the customers in the given dictionary, which
+	 * we only read.
+	 */
+	public Aging(LocalDate asOf, CustomerDictionary dictionary) {
+		this.asOf = asOf;
+		this.dictionary = dictionary;
+		this.amounts = new long[Math.max(1, dictionary.size()) * BUCKETS.length];
+	}
+
+	public LocalDate getAsOf() {
+		return asOf;
+	}
+
+	/**
+	 * Adds the given invoice to its customer's bucket, if it is unpaid
+	 * and was issued by our date.
+	 */
+	public void add(Invoice invoice) {
+		checkNotSealed();
+		if (invoice.getPaidDate() == null && 
+				!invoice.getTheDate().isAfter(asOf)) {
+			Customer customer = invoice.getCustomer();
+			long daysPastDue = ChronoUnit.DAYS.between(invoice.getTheDate()
+					.plusDays(customer.getTerms().getDays()), asOf);
+			int bucket = Bucket.of(daysPastDue).ordinal();
+			int id = ownDictionary 
+				? dictionary.add(customer) : dictionary.idOf(customer);
+			if (id >= 0) {
+				slotsFor(id)[id * BUCKETS.length + bucket] += invoice.getCents();
+				owing.set(id);
+			}
+			totals[bucket] += invoice.getCents();
+		}
+	}
+
+	/**
+	 * Adds another aging, for the same date, into this one.
+	 */
+	public Aging merge(Aging other) {
+		checkNotSealed();
+		for (int otherId = other.owing.nextSetBit(0); otherId >= 0; 
+				otherId = other.owing.nextSetBit(otherId + 1)) {
+			int id = otherId;
+			if (other.dictionary != dictionary) {
+				Customer customer = other.dictionary.get(otherId);
+				id = ownDictionary 
+					? dictionary.add(customer) : dictionary.idOf(customer);
+			}
+			if (id >= 0) {
+				long[] mine = slotsFor(id);
+				for (int i = 0; i < BUCKETS.length; ++i) {
+					mine[id * BUCKETS.length + i] += 
+						other.amounts[otherId * BUCKETS.length + i];
+				}
+				owing.set(id);
+			}
+		}
+		for (int i = 0; i < totals.length; ++i) {
+			totals[i] += other.totals[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the customers that have unpaid invoices.
+	 */
+	public Set<Customer> getCustomers() {
+		Set<Customer> result = new LinkedHashSet<>();
+		for (int id = owing.nextSetBit(0); id >= 0; 
+				id = owing.nextSetBit(id + 1)) {
+			result.add(dictionary.get(id));
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	public long getCents(Customer customer, Bucket bucket) {
+		int id = dictionary.idOf(customer);
+		return id >= 0 && owing.get(id)
+			? amounts[id * BUCKETS.length + bucket.ordinal()] : 0;
+	}
+
+	public long getTotalCents(Customer customer) {
+		long total = 0;
+		for (Bucket bucket : BUCKETS) {
+			total += getCents(customer, bucket);
+		}
+		return total;
+	}
+
+	public long getTotalCents(Bucket bucket) {
+		return totals[bucket.ordinal()];
+	}
+
+	public long getTotalCents() {
+		long total = 0;
+		for (long amount : totals) {
+			total += amount;
+		}
+		return total;
+	}
+
+	public double getAmount(Customer customer, Bucket bucket) {
+		return Money.toDollars(getCents(customer, bucket));
+	}
+
+	public double getTotal(Customer customer) {
+		return Money.toDollars(getTotalCents(customer));
+	}
+
+	public double getTotal(Bucket bucket) {
+		return Money.toDollars(getTotalCents(bucket));
+	}
+
+	public double getTotal() {
+		return Money.toDollars(getTotalCents());
+	}
+
+	/**
+	 * Makes this aging read-only, so that it can be shared, and returns it.
+	 */
+	public Aging seal() {
+		sealed = true;
+		return this;
+	}
+
+	private void checkNotSealed() {
+		if (sealed) {
+			throw new UnsupportedOperationException("This aging is read-only.");
+		}
+	}
+
+	/**
+	 * Helper to make room for the given customer id, as our own
+	 * dictionary grows.
+	 */
+	private long[] slotsFor(int id) {
+		if ((id + 1) * BUCKETS.length > amounts.length) {
+			amounts = Arrays.copyOf(amounts, 
+				Math.max(id + 1, amounts.length / BUCKETS.length * 2) 
+					* BUCKETS.length);
+		}
+		return amounts;
+	}
+}
@@ -2,30 +2,78 @@ package com.amica.billing;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 /**
  * Simple JavaBean representing a customer.
+ * The full name and the sort key are built once and cached, since they are
+ * used for every invoice we load and every comparison we sort by;
+ * changing either part of the name clears them.
  *
  * @author Will Provost
  */
 @Data
 @EqualsAndHashCode(of={"firstName", "lastName"})
 @NoArgsConstructor
-@AllArgsConstructor
 public class Customer {
     private String firstName;
     private String lastName;
     private Terms terms;
-    
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient String name;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient String sortKey;
+
+    public Customer(String firstName, String lastName, Terms terms) {
+    	this.firstName = firstName;
+    	this.lastName = lastName;
+    	this.terms = terms;
+    }
+
+    public void setFirstName(String firstName) {
+    	this.firstName = firstName;
+    	name = null;
+    	sortKey = null;
+    }
+
+    public void setLastName(String lastName) {
+    	this.lastName = lastName;
+    	name = null;
+    	sortKey = null;
+    }
+
     @JsonIgnore
     public String getName() {
-    	return firstName + " " + lastName;
+    	String result = name;
+    	if (result == null) {
+    		result = firstName + " " + lastName;
+    		name = result;
+    	}
+    	return result;
+    }
+
+    /**
+     * Key for sorting by last name and then first name.
+     */
+    @JsonIgnore
+    public String getSortKey() {
+    	String result = sortKey;
+    	if (result == null) {
+    		result = lastName + firstName;
+    		sortKey = result;
+    	}
+    	return result;
     }
-    
+
     @Override
     public String toString() {
     	return "Customer: " + getName();
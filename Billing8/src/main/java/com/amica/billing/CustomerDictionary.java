@@ -0,0 +1,249 @@
+package com.amica.billing;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Gives each customer a dense int id, in the order they're added, so that
+ * per-customer data can be kept in plain arrays indexed by id, and so that
+ * stores such as {@link OffHeapInvoices} can refer to a customer with
+ * an int. Full names are kept once, end to end in one shared char array,
+ * and a name can be looked up as a whole or as two ranges of a larger
+ * sequence; either way, no name string is built to find an id.
+ *
+ * Customers are matched by name, as {@link Customer#equals} does, and
+ * so must have both a first and a last name; a customer without them,
+ * such as a {@link com.amica.billing.parse.DeferredCustomers deferred}
+ * placeholder, can't be added and is never found.
+ * Ids are never reused; customers can't be removed.
+ *
+ * @author Will Provost
+ */
+public class CustomerDictionary {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Customer[] customers = new Customer[INITIAL_CAPACITY];
+	private int[] nameStarts = new int[INITIAL_CAPACITY + 1];
+	private int[] firstLengths = new int[INITIAL_CAPACITY];
+	private char[] names = new char[INITIAL_CAPACITY * 16];
+	private int size;
+
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+	private int[] hashes = new int[INITIAL_CAPACITY * 2];
+
+	public CustomerDictionary() {}
+
+	/**
+	 * Builds a dictionary of the given customers, with ids in the order
+	 * the collection gives them to us.
+	 */
+	public CustomerDictionary(Collection<Customer> customers) {
+		for (Customer customer : customers) {
+			add(customer);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the customer with the given id.
+	 */
+	public Customer get(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Customer id " + id + " of " + size);
+		}
+		return customers[id];
+	}
+
+	/**
+	 * Returns the full name of the customer with the given id.
+	 */
+	public String getName(int id) {
+		get(id);
+		return new String(names, nameStarts[id], nameStarts[id + 1] - nameStarts[id]);
+	}
+
+	/**
+	 * Returns the id of the given customer, adding it if we don't have
+	 * a customer by that name.
+	 */
+	public int add(Customer customer) {
+		String first = customer.getFirstName();
+		String last = customer.getLastName();
+		if (first == null || last == null) {
+			throw new IllegalArgumentException
+				("Customer needs first and last names: " + customer.getName());
+		}
+		int hash = customer.getName().hashCode();
+		int id = find(hash, first, 0, first.length(), last, 0, last.length());
+		if (id >= 0) {
+			return id;
+		}
+
+		if (size == customers.length) {
+			int capacity = size * 2;
+			customers = Arrays.copyOf(customers, capacity);
+			nameStarts = Arrays.copyOf(nameStarts, capacity + 1);
+			firstLengths = Arrays.copyOf(firstLengths, capacity);
+		}
+		if ((size + 1) * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+
+		int start = nameStarts[size];
+		int end = start + first.length() + 1 + last.length();
+		if (end > names.length) {
+			names = Arrays.copyOf(names, Math.max(end, names.length * 2));
+		}
+		first.getChars(0, first.length(), names, start);
+		names[start + first.length()] = ' ';
+		last.getChars(0, last.length(), names, start + first.length() + 1);
+
+		id = size++;
+		customers[id] = customer;
+		firstLengths[id] = first.length();
+		nameStarts[size] = end;
+		insert(hash, id);
+		return id;
+	}
+
+	/**
+	 * Returns the id of the given customer, or -1 if we don't have one
+	 * by that name. This is quickest for the very object we were given.
+	 */
+	public int idOf(Customer customer) {
+		String first = customer.getFirstName();
+		String last = customer.getLastName();
+		if (first == null || last == null) {
+			return -1;
+		}
+		int hash = customer.getName().hashCode();
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0;
+				slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			if (customers[id] == customer || (hashes[slot] == hash &&
+					matches(id, first, 0, first.length(),
+						last, 0, last.length()))) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the id of the customer with the given full name, or -1.
+	 */
+	public int idOf(String name) {
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0;
+				slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			if (hashes[slot] == hash && matches(id, name)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the id of the customer whose first and last names are found
+	 * at the given ranges of the given sequences, or -1.
+	 */
+	public int idOf(CharSequence first, int firstStart, int firstEnd,
+			CharSequence last, int lastStart, int lastEnd) {
+		int hash = 0;
+		for (int i = firstStart; i < firstEnd; ++i) {
+			hash = 31 * hash + first.charAt(i);
+		}
+		hash = 31 * hash + ' ';
+		for (int i = lastStart; i < lastEnd; ++i) {
+			hash = 31 * hash + last.charAt(i);
+		}
+		return find(hash, first, firstStart, firstEnd, last, lastStart, lastEnd);
+	}
+
+	private int find(int hash, CharSequence first, int firstStart, int firstEnd,
+			CharSequence last, int lastStart, int lastEnd) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0;
+				slot = (slot + 1) & mask) {
+			int id = table[slot] - 1;
+			if (hashes[slot] == hash && matches(id,
+					first, firstStart, firstEnd, last, lastStart, lastEnd)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper to compare the stored name for an id with a name given as
+	 * two ranges. The space between them is where we expect it, as
+	 * we record the length of each first name.
+	 */
+	private boolean matches(int id, CharSequence first, int firstStart,
+			int firstEnd, CharSequence last, int lastStart, int lastEnd) {
+		int firstLength = firstEnd - firstStart;
+		if (firstLengths[id] != firstLength || nameStarts[id + 1] -
+				nameStarts[id] != firstLength + 1 + lastEnd - lastStart) {
+			return false;
+		}
+		int position = nameStarts[id];
+		for (int i = firstStart; i < firstEnd; ++i) {
+			if (names[position++] != first.charAt(i)) {
+				return false;
+			}
+		}
+		++position;
+		for (int i = lastStart; i < lastEnd; ++i) {
+			if (names[position++] != last.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matches(int id, String name) {
+		int start = nameStarts[id];
+		if (nameStarts[id + 1] - start != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); ++i) {
+			if (names[start + i] != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper to put an id in the table. Each slot holds an id plus one,
+	 * so that zero marks an empty slot.
+	 */
+	private void insert(int hash, int id) {
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = id + 1;
+		hashes[slot] = hash;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldTable = table;
+		int[] oldHashes = hashes;
+		table = new int[capacity];
+		hashes = new int[capacity];
+		for (int slot = 0; slot < oldTable.length; ++slot) {
+			if (oldTable[slot] != 0) {
+				insert(oldHashes[slot], oldTable[slot] - 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package com.amica.billing;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.amica.billing.Reporter.CustomerWithVolume;
+
+/**
+ * Index of invoices by customer. Each customer's invoices are kept in order
+ * by number, in a list found by the customer's id in a
+ * {@link CustomerDictionary}; and we keep the customers sorted in the order
+ * we list them, by name or by a collator.
+ *
+ * Like the {@link Reporter}, this can be read by many threads at once,
+ * but is updated by one thread at a time while none are reading.
+ *
+ * @author Will Provost
+ */
+class CustomerInvoices {
+
+	private CustomerDictionary dictionary;
+	private List<List<Invoice>> invoicesOfCustomer;
+	private Collator collator;
+	private volatile Comparator<Customer> order;
+	private volatile Customer[] sortedCustomers;
+
+	/**
+	 * Indexes the given invoices. Invoices for customers we aren't given
+	 * aren't indexed.
+	 */
+	public CustomerInvoices(Collection<Customer> customers,
+			Collection<Invoice> invoices, Collator collator) {
+		this.collator = collator;
+		dictionary = new CustomerDictionary(customers);
+		invoicesOfCustomer = new ArrayList<>
+				(Collections.nCopies(dictionary.size(), null));
+		for (Invoice invoice : invoices) {
+			int id = dictionary.idOf(invoice.getCustomer());
+			if (id >= 0) {
+				listOf(id).add(invoice);
+			}
+		}
+		for (List<Invoice> customerInvoices : invoicesOfCustomer) {
+			if (customerInvoices != null) {
+				customerInvoices.sort(Reporter.BY_NUMBER);
+			}
+		}
+	}
+
+	public CustomerDictionary getDictionary() {
+		return dictionary;
+	}
+
+	public void setCollator(Collator collator) {
+		this.collator = collator;
+		order = null;
+		sortedCustomers = null;
+	}
+
+	/**
+	 * Adds a customer, who must not share a name with any we have.
+	 */
+	public void add(Customer customer) {
+		dictionary.add(customer);
+		invoicesOfCustomer.add(null);
+		order = null;
+		sortedCustomers = null;
+	}
+
+	/**
+	 * Adds an invoice, which must be for one of our customers.
+	 */
+	public void add(Invoice invoice) {
+		List<Invoice> customerInvoices =
+				listOf(dictionary.idOf(invoice.getCustomer()));
+		int position = Collections.binarySearch
+				(customerInvoices, invoice, Reporter.BY_NUMBER);
+		customerInvoices.add(-position - 1, invoice);
+	}
+
+	/**
+	 * Returns the invoices for a customer, in order by number.
+	 */
+	public List<Invoice> invoicesOf(Customer customer) {
+		int id = customer != null ? dictionary.idOf(customer) : -1;
+		List<Invoice> result = id >= 0 ? invoicesOfCustomer.get(id) : null;
+		return result != null
+			? Collections.unmodifiableList(result) : Collections.emptyList();
+	}
+
+	/**
+	 * Returns the order in which we list customers. This and the sorted
+	 * customers are worked out when first needed, possibly by two threads
+	 * at once, which is harmless; they're volatile so that either thread
+	 * sees a complete result.
+	 */
+	public Comparator<Customer> order() {
+		Comparator<Customer> result = order;
+		if (result == null) {
+			result = collator != null ? collationOrder() : Reporter.BY_NAME;
+			order = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Streams the customers in {@link #order order}.
+	 */
+	public Stream<Customer> streamCustomers() {
+		return Arrays.stream(sortedCustomers());
+	}
+
+	/**
+	 * Returns the position of the given customer in {@link #order order}.
+	 */
+	public int positionOf(Customer customer) {
+		return Arrays.binarySearch(sortedCustomers(), customer, order());
+	}
+
+	/**
+	 * Collector that totals invoice amounts in cents, in an array indexed
+	 * by customer id. Each thread of a parallel stream totals into its own
+	 * array, and the arrays are added up at the end.
+	 */
+	public Collector<Invoice,long[],long[]> totals() {
+		int count = dictionary.size();
+		return Collector.of(() -> new long[count],
+			(totals, invoice) -> {
+				int id = dictionary.idOf(invoice.getCustomer());
+				if (id >= 0) {
+					totals[id] += invoice.getCents();
+				}
+			}, (left, right) -> {
+				for (int id = 0; id < left.length; ++id) {
+					left[id] += right[id];
+				}
+				return left;
+			});
+	}
+
+	/**
+	 * Pairs each customer with their {@link #totals total}.
+	 */
+	public Stream<CustomerWithVolume> withVolumes
+			(long[] totals, boolean parallel) {
+		IntStream ids = IntStream.range(0, totals.length);
+		return (parallel ? ids.parallel() : ids).mapToObj(id ->
+			CustomerWithVolume.ofCents(dictionary.get(id).getName(), totals[id]));
+	}
+
+	/**
+	 * Helper to get the list of invoices for the customer with the given id,
+	 * making it if the customer hasn't had any invoices yet.
+	 */
+	private List<Invoice> listOf(int id) {
+		List<Invoice> result = invoicesOfCustomer.get(id);
+		if (result == null) {
+			result = new ArrayList<>();
+			invoicesOfCustomer.set(id, result);
+		}
+		return result;
+	}
+
+	private Customer[] sortedCustomers() {
+		Customer[] sorted = sortedCustomers;
+		if (sorted == null) {
+			sorted = new Customer[dictionary.size()];
+			for (int id = 0; id < sorted.length; ++id) {
+				sorted[id] = dictionary.get(id);
+			}
+			Arrays.sort(sorted, order());
+			sortedCustomers = sorted;
+		}
+		return sorted;
+	}
+
+	/**
+	 * Helper to get the collation order of the customers. We make collation
+	 * keys once per customer and sort them once, so that the comparator
+	 * we return only compares ranks.
+	 */
+	private Comparator<Customer> collationOrder() {
+
+		Map<Customer,CollationKey[]> keys = new HashMap<>();
+		for (int id = 0; id < dictionary.size(); ++id) {
+			Customer customer = dictionary.get(id);
+			keys.put(customer, new CollationKey[] {
+				collator.getCollationKey(customer.getLastName()),
+				collator.getCollationKey(customer.getFirstName()) });
+		}
+		Customer[] sorted = keys.keySet().toArray(new Customer[keys.size()]);
+		Arrays.sort(sorted, (a, b) -> {
+				CollationKey[] aKeys = keys.get(a);
+				CollationKey[] bKeys = keys.get(b);
+				int result = aKeys[0].compareTo(bKeys[0]);
+				if (result == 0) {
+					result = aKeys[1].compareTo(bKeys[1]);
+				}
+				return result != 0 ? result : Reporter.compareByName(a, b);
+			});
+
+		Map<Customer,Integer> ranks = new HashMap<>();
+		for (int i = 0; i < sorted.length; ++i) {
+			ranks.put(sorted[i], i);
+		}
+		return (a, b) -> {
+				Integer aRank = ranks.get(a);
+				Integer bRank = ranks.get(b);
+				return aRank != null && bRank != null
+					? Integer.compare(aRank, bRank) : Reporter.compareByName(a, b);
+			};
+	}
+}
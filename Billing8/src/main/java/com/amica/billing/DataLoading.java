@@ -0,0 +1,110 @@
+package com.amica.billing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+import com.amica.billing.Reporter.Status;
+
+import lombok.extern.java.Log;
+
+/**
+ * Loads a {@link Reporter}'s data, right away or on a background thread,
+ * and lets queries wait for it.
+ *
+ * @author Will Provost
+ */
+@Log
+class DataLoading {
+
+	private final CompletableFuture<Void> future;
+
+	/**
+	 * Runs the given loader now, or on a background thread if we're lazy.
+	 */
+	public DataLoading(Runnable loader, boolean lazy) {
+		Executor executor = lazy
+			? task -> {
+				Thread thread = new Thread(task, "Reporter loader");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			: Runnable::run;
+		future = CompletableFuture.runAsync(loader, executor)
+			.whenComplete((result, ex) -> {
+				if (ex != null) {
+					log.log(Level.SEVERE, "Couldn't load data.", causeOf(ex));
+				}
+			});
+	}
+
+	public Status getStatus() {
+		return !future.isDone() ? Status.LOADING
+			: future.isCompletedExceptionally() ? Status.FAILED
+			: Status.READY;
+	}
+
+	/**
+	 * Returns what went wrong, or null if nothing has.
+	 */
+	public Throwable getFailure() {
+		if (getStatus() == Status.FAILED) {
+			try {
+				future.join();
+			} catch (CompletionException ex) {
+				return causeOf(ex);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits up to the given time, and tells whether the data is ready.
+	 */
+	public boolean awaitReady(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		try {
+			future.get(timeout, unit);
+			return true;
+		} catch (ExecutionException | TimeoutException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits for the data for up to the given time, or for as long as it
+	 * takes if that is negative, and throws an {@link IllegalStateException}
+	 * if it is still loading or couldn't be loaded.
+	 */
+	public void await(long waitMillis) {
+		try {
+			if (waitMillis < 0) {
+				future.join();
+			} else {
+				future.get(waitMillis, TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException ex) {
+			throw new IllegalStateException("Data is still loading.");
+		} catch (CompletionException | ExecutionException ex) {
+			throw new IllegalStateException
+				("Data couldn't be loaded.", causeOf(ex.getCause() != null
+					? ex.getCause() : ex));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException
+				("Interrupted while waiting for data to load.", ex);
+		}
+	}
+
+	/**
+	 * Helper to see past the wrapper that a future puts on an exception.
+	 */
+	private static Throwable causeOf(Throwable ex) {
+		return ex instanceof CompletionException && ex.getCause() != null
+			? ex.getCause() : ex;
+	}
+}
@@ -0,0 +1,106 @@
+package com.amica.billing;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Navigable index of invoices by one of their dates. Invoices that have
+ * no value for the date aren't indexed. Invoices on the same date are kept
+ * in order by number, so range queries return a stable order.
+ * An index can be read by many threads, so long as none is adding to it.
+ *
+ * @author Will Provost
+ */
+public class DateIndex {
+
+	private Function<Invoice,LocalDate> dateOf;
+	private NavigableMap<LocalDate,List<Invoice>> index = new TreeMap<>();
+	private int size;
+
+	/**
+	 * Builds an index of the given invoices on the date found by the
+	 * given function, such as {@link Invoice#getTheDate}.
+	 */
+	public DateIndex(Function<Invoice,LocalDate> dateOf,
+			Collection<Invoice> invoices) {
+		this.dateOf = dateOf;
+		for (Invoice invoice : invoices) {
+			LocalDate date = dateOf.apply(invoice);
+			if (date != null) {
+				index.computeIfAbsent(date, d -> new ArrayList<>()).add(invoice);
+				++size;
+			}
+		}
+		for (List<Invoice> invoicesOnDate : index.values()) {
+			invoicesOnDate.sort(Reporter.BY_NUMBER);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an invoice under its current date, if it has one. Invoice dates
+	 * only ever go from null to a value, as when one is paid, so an
+	 * invoice is never indexed under a date it no longer has.
+	 */
+	public void add(Invoice invoice) {
+		LocalDate date = dateOf.apply(invoice);
+		if (date != null) {
+			List<Invoice> invoicesOnDate =
+					index.computeIfAbsent(date, d -> new ArrayList<>());
+			int position = Collections.binarySearch
+					(invoicesOnDate, invoice, Reporter.BY_NUMBER);
+			invoicesOnDate.add(position < 0 ? -position - 1 : position, invoice);
+			++size;
+		}
+	}
+
+	/**
+	 * Returns the invoices whose dates fall between the given dates,
+	 * inclusive, in date order; the stream is empty if the range is
+	 * reversed, with the first date after the second.
+	 */
+	public Stream<Invoice> between(LocalDate from, LocalDate to) {
+		if (from.isAfter(to)) {
+			return Stream.empty();
+		}
+		return index.subMap(from, true, to, true).values().stream()
+				.flatMap(List::stream);
+	}
+
+	/**
+	 * Returns the invoices that come after the given one in this index,
+	 * up to and including the given date. This is the continuation of a
+	 * range query that has already returned the given invoice, and so
+	 * is how we page through such a range without counting from its start.
+	 */
+	public Stream<Invoice> after(Invoice invoice, LocalDate to) {
+		LocalDate date = dateOf.apply(invoice);
+		if (date == null) {
+			throw new IllegalArgumentException
+				("Invoice " + invoice.getNumber() + " isn't in this index.");
+		}
+		if (date.isAfter(to)) {
+			return Stream.empty();
+		}
+
+		List<Invoice> invoicesOnDate =
+				index.getOrDefault(date, Collections.emptyList());
+		int position = Collections.binarySearch
+				(invoicesOnDate, invoice, Reporter.BY_NUMBER);
+		int start = position < 0 ? -position - 1 : position + 1;
+		return Stream.concat(invoicesOnDate.subList
+				(start, invoicesOnDate.size()).stream(),
+			index.subMap(date, false, to, true).values().stream()
+				.flatMap(List::stream));
+	}
+}
@@ -4,27 +4,32 @@ import java.time.LocalDate;
 
 import com.amica.billing.parse.LocalDateDeserializer;
 import com.amica.billing.parse.LocalDateSerializer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 /**
- * Simple JavaBean representing an invoice.
+ * Simple JavaBean representing an invoice. The amount is held exactly,
+ * in {@link #getCents cents}; it is still offered in dollars as a double,
+ * and that's how it appears in JSON.
  *
  * @author Will Provost
  */
 @Data
 @EqualsAndHashCode(of="number")
 @NoArgsConstructor
-@AllArgsConstructor
+@JsonPropertyOrder({ "number", "customer", "amount", "theDate", "paidDate" })
 public class Invoice {
 	private int number;
     private Customer customer;
-    private double amount;
+    
+    @JsonIgnore
+    private long cents;
     
     @JsonSerialize(using=LocalDateSerializer.class)
     @JsonDeserialize(using=LocalDateDeserializer.class)
@@ -34,6 +39,40 @@ public class Invoice {
     @JsonDeserialize(using=LocalDateDeserializer.class)
     private LocalDate paidDate;
 
+    public Invoice(int number, Customer customer, double amount,
+    		LocalDate theDate, LocalDate paidDate) {
+    	this(number, customer, theDate, paidDate);
+    	this.cents = Money.toCents(amount);
+    }
+    
+    private Invoice(int number, Customer customer,
+    		LocalDate theDate, LocalDate paidDate) {
+    	this.number = number;
+    	this.customer = customer;
+    	this.theDate = theDate;
+    	this.paidDate = paidDate;
+    }
+    
+    /**
+     * Creates an invoice for an exact amount in cents. This is a factory
+     * rather than a constructor so that an integer amount passed to the
+     * constructor is still taken as dollars.
+     */
+    public static Invoice ofCents(int number, Customer customer, long cents,
+    		LocalDate theDate, LocalDate paidDate) {
+    	Invoice invoice = new Invoice(number, customer, theDate, paidDate);
+    	invoice.cents = cents;
+    	return invoice;
+    }
+    
+    public double getAmount() {
+    	return Money.toDollars(cents);
+    }
+    
+    public void setAmount(double amount) {
+    	cents = Money.toCents(amount);
+    }
+    
     @Override
     public String toString() {
     	return "Invoice " + number;
@@ -0,0 +1,251 @@
+package com.amica.billing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of invoices by number that doesn't box its keys. While the numbers
+ * put into it run on without gaps from the first one -- as they do in
+ * a file written in order -- invoices are held in one array indexed by
+ * number. Once a number breaks the run, we switch to an open-addressing
+ * table of int keys and invoices. Either way, lookups take constant time.
+ * Iteration is in order by number; invoices can't be removed.
+ *
+ * @author Will Provost
+ */
+public class InvoiceMap extends AbstractMap<Integer,Invoice>
+		implements InvoiceStore {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Invoice[] dense = new Invoice[INITIAL_CAPACITY];
+	private int base;
+
+	private int[] keys;
+	private Invoice[] values;
+
+	private int size;
+	private int maxNumber;
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getMaxNumber() {
+		return maxNumber;
+	}
+
+	/**
+	 * Tells whether we're still holding invoices in one dense array.
+	 */
+	public boolean isDense() {
+		return dense != null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public Invoice get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	/**
+	 * Finds the invoice with the given number, or returns null.
+	 */
+	public Invoice get(int number) {
+		if (dense != null) {
+			long index = (long) number - base;
+			return index >= 0 && index < size ? dense[(int) index] : null;
+		}
+		int slot = find(number);
+		return slot >= 0 ? values[slot] : null;
+	}
+
+	/**
+	 * Stores the given invoice, which must have the given number, replacing
+	 * any we hold with that number.
+	 */
+	@Override
+	public Invoice put(Integer number, Invoice invoice) {
+		if (number.intValue() != invoice.getNumber()) {
+			throw new IllegalArgumentException("Invoice " +
+				invoice.getNumber() + " can't be stored as number " + number);
+		}
+
+		Invoice previous;
+		if (dense != null) {
+			if (size == 0) {
+				base = number;
+			}
+			long index = (long) number - base;
+			if (index >= 0 && index < size) {
+				previous = dense[(int) index];
+				dense[(int) index] = invoice;
+				return previous;
+			} else if (index == size) {
+				if (size == dense.length) {
+					dense = Arrays.copyOf(dense, size * 2);
+				}
+				dense[size++] = invoice;
+				maxNumber = size == 1 ? number : Math.max(maxNumber, number);
+				return null;
+			}
+			toTable();
+		}
+
+		int slot = find(number);
+		if (slot >= 0) {
+			previous = values[slot];
+			values[slot] = invoice;
+			return previous;
+		}
+		if ((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		insert(number, invoice);
+		maxNumber = size == 1 ? number : Math.max(maxNumber, number);
+		return null;
+	}
+
+	@Override
+	public void clear() {
+		dense = new Invoice[INITIAL_CAPACITY];
+		keys = null;
+		values = null;
+		size = 0;
+		maxNumber = 0;
+	}
+
+	@Override
+	public Set<Entry<Integer,Invoice>> entrySet() {
+		return new AbstractSet<Entry<Integer,Invoice>>() {
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Entry<Integer,Invoice>> iterator() {
+				Invoice[] inOrder = inOrder();
+				return new Iterator<Entry<Integer,Invoice>>() {
+					private int next;
+
+					public boolean hasNext() {
+						return next < inOrder.length;
+					}
+
+					public Entry<Integer,Invoice> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						Invoice invoice = inOrder[next++];
+						return new AbstractMap.SimpleImmutableEntry<>
+								(invoice.getNumber(), invoice);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Helper to list our invoices in order by number. The dense array is
+	 * in order already; from the table, we sort the keys and look them up.
+	 */
+	private Invoice[] inOrder() {
+		if (dense != null) {
+			return Arrays.copyOf(dense, size);
+		}
+
+		int[] numbers = new int[size];
+		int count = 0;
+		for (int slot = 0; slot < keys.length; ++slot) {
+			if (values[slot] != null) {
+				numbers[count++] = keys[slot];
+			}
+		}
+		Arrays.sort(numbers);
+
+		Invoice[] result = new Invoice[size];
+		for (int i = 0; i < size; ++i) {
+			result[i] = values[find(numbers[i])];
+		}
+		return result;
+	}
+
+	/**
+	 * Helper to move from the dense array to the table.
+	 */
+	private void toTable() {
+		Invoice[] invoices = dense;
+		int count = size;
+		dense = null;
+		size = 0;
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < (count + 1) * 2) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		values = new Invoice[capacity];
+		for (int i = 0; i < count; ++i) {
+			insert(invoices[i].getNumber(), invoices[i]);
+		}
+	}
+
+	/**
+	 * Helper to spread invoice numbers, which are often sequential,
+	 * across the table.
+	 */
+	private static int hash(int number) {
+		int hash = number * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Helper to find the slot holding the given number, or -1.
+	 * An empty slot is one with no invoice.
+	 */
+	private int find(int number) {
+		int mask = keys.length - 1;
+		for (int slot = hash(number) & mask; values[slot] != null;
+				slot = (slot + 1) & mask) {
+			if (keys[slot] == number) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void insert(int number, Invoice invoice) {
+		int mask = keys.length - 1;
+		int slot = hash(number) & mask;
+		while (values[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = number;
+		values[slot] = invoice;
+		++size;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Invoice[] oldValues = values;
+		keys = new int[capacity];
+		values = new Invoice[capacity];
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; ++slot) {
+			if (oldValues[slot] != null) {
+				insert(oldKeys[slot], oldValues[slot]);
+			}
+		}
+	}
+}
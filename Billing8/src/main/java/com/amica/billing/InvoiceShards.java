@@ -0,0 +1,207 @@
+package com.amica.billing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.amica.billing.parse.DataFiles;
+import com.amica.billing.parse.Producer;
+import com.amica.billing.parse.RejectSink;
+import com.amica.escm.configuration.api.Configuration;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+/**
+ * Loads invoices that are spread over many shard files, found either as
+ * all the files in a directory or as the files matching a glob pattern
+ * such as "data/invoices-*.csv.gz". Shards are parsed concurrently on a 
+ * bounded thread pool, each with a parser suited to that shard, and merged
+ * in filename order into a single set of invoices. If an invoice number
+ * appears in more than one shard, the first one wins and the duplicates
+ * are reported; the later copies are kept with their shards, so that
+ * a shard can be written back without losing them.
+ * 
+ * @author Will Provost
+ */
+@Log
+public class InvoiceShards {
+
+	public static final String SHARD_THREADS_PROPERTY =
+			Reporter.class.getPackage().getName() + ".shardThreads";
+	public static final int DEFAULT_THREADS = 
+			Math.min(8, Runtime.getRuntime().availableProcessors());
+	
+	private static final String GLOB_CHARACTERS = "*?[{";
+	
+	private Function<String,Producer> parsers;
+	private int threads;
+	
+	/**
+	 * Result of loading a set of shards.
+	 */
+	@Getter
+	public static class Result {
+		private List<String> shards = new ArrayList<>();
+		private Map<Integer,Invoice> invoices = new LinkedHashMap<>();
+		private Map<Integer,String> shardsByInvoice = new LinkedHashMap<>();
+		private Map<Integer,List<String>> duplicates = new LinkedHashMap<>();
+		private Map<String,List<Invoice>> duplicatesByShard = 
+				new LinkedHashMap<>();
+	}
+	
+	/**
+	 * Provide a function that gives us a parser for each shard filename, 
+	 * and the maximum number of shards to parse at once.
+	 */
+	public InvoiceShards(Function<String,Producer> parsers, int threads) {
+		this.parsers = parsers;
+		this.threads = threads;
+	}
+	
+	/**
+	 * Parsers are created from the given configuration, and if there is
+	 * a reject sink, each parser sends its rejects there.
+	 */
+	public InvoiceShards(Configuration configuration, RejectSink rejectSink) {
+		this(filename -> {
+				Producer parser = 
+						ParserFactory.createParser(configuration, filename);
+				if (rejectSink != null) {
+					parser.setRejectSink(rejectSink);
+				}
+				return parser;
+			}, configuration.containsKey(SHARD_THREADS_PROPERTY)
+				? Integer.parseInt(configuration.getString(SHARD_THREADS_PROPERTY))
+				: DEFAULT_THREADS);
+	}
+	
+	/**
+	 * Returns true if the given invoice file setting names a directory
+	 * or a glob pattern, rather than a single file.
+	 */
+	public static boolean isSharded(String invoiceFile) {
+		for (char c : GLOB_CHARACTERS.toCharArray()) {
+			if (invoiceFile.indexOf(c) != -1) {
+				return true;
+			}
+		}
+		
+		return Files.isDirectory(Paths.get(invoiceFile));
+	}
+	
+	/**
+	 * Finds the shard files for the given directory or glob pattern,
+	 * in filename order. Globs are matched against filenames in one 
+	 * directory. Hidden files are skipped.
+	 */
+	public static List<String> resolve(String invoiceFile) throws IOException {
+		Path folder = Paths.get(invoiceFile);
+		String glob = "*";
+		if (!Files.isDirectory(folder)) {
+			Path parent = folder.getParent();
+			glob = folder.getFileName().toString();
+			folder = parent != null ? parent : Paths.get(".");
+		}
+		
+		List<String> shards = new ArrayList<>();
+		try (DirectoryStream<Path> files = 
+				Files.newDirectoryStream(folder, glob)) {
+			for (Path file : files) {
+				if (Files.isRegularFile(file) && !Files.isHidden(file)) {
+					shards.add(file.toString());
+				}
+			}
+		}
+		Collections.sort(shards);
+		
+		return shards;
+	}
+	
+	/**
+	 * Helper to parse one shard, flushing the parser's rejects when done.
+	 */
+	private List<Invoice> parse(String shard, Map<String,Customer> customers) 
+			throws IOException {
+		Producer parser = parsers.apply(shard);
+		try (Reader reader = DataFiles.openReader(shard)) {
+			return parser.parseInvoices(reader, customers)
+					.collect(Collectors.toList());
+		} finally {
+			parser.flushRejects();
+		}
+	}
+	
+	/**
+	 * Parses all shards for the given directory or glob, using the given
+	 * customers to resolve customer names, and merges the results.
+	 */
+	public Result load(String invoiceFile, Map<String,Customer> customers) 
+			throws IOException {
+		
+		Result result = new Result();
+		result.shards = resolve(invoiceFile);
+		if (result.shards.isEmpty()) {
+			log.warning(() -> "No invoice shards found for " + invoiceFile);
+			return result;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool
+				(Math.max(1, Math.min(threads, result.shards.size())));
+		try {
+			List<Future<List<Invoice>>> futures = new ArrayList<>();
+			for (String shard : result.shards) {
+				futures.add(pool.submit(() -> parse(shard, customers)));
+			}
+			
+			for (int i = 0; i < futures.size(); ++i) {
+				String shard = result.shards.get(i);
+				for (Invoice invoice : futures.get(i).get()) {
+					Integer number = invoice.getNumber();
+					if (!result.invoices.containsKey(number)) {
+						result.invoices.put(number, invoice);
+						result.shardsByInvoice.put(number, shard);
+					} else {
+						result.duplicates.computeIfAbsent(number, n -> 
+							new ArrayList<>(Collections.singletonList
+								(result.shardsByInvoice.get(n))))
+									.add(shard);
+						result.duplicatesByShard.computeIfAbsent
+							(shard, s -> new ArrayList<>()).add(invoice);
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading shards.", ex);
+		} catch (ExecutionException ex) {
+			throw new IOException("Couldn't load shard.", ex.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		if (!result.duplicates.isEmpty()) {
+			log.warning(() -> String.format("%d invoice numbers found in " +
+					"more than one shard; keeping the first of each: %s", 
+					result.duplicates.size(), result.duplicates));
+		}
+		log.fine(() -> String.format("Loaded %d invoices from %d shards.", 
+				result.invoices.size(), result.shards.size()));
+		
+		return result;
+	}
+}
@@ -0,0 +1,17 @@
+package com.amica.billing;
+
+import java.util.Map;
+
+/**
+ * A map of invoices by number, iterated in order by number, that can tell
+ * us its highest number without going through its keys.
+ *
+ * @author Will Provost
+ */
+public interface InvoiceStore extends Map<Integer,Invoice> {
+
+	/**
+	 * Returns the highest invoice number we hold, or zero if we hold none.
+	 */
+	public int getMaxNumber();
+}
@@ -0,0 +1,143 @@
+package com.amica.billing;
+
+/**
+ * Routines for amounts of money held exactly, as a long number of cents.
+ * Parsing and appending work character by character, without creating
+ * intermediate strings or going through floating point.
+ *
+ * @author Will Provost
+ */
+public class Money {
+
+	public static final int CENTS_PER_DOLLAR = 100;
+
+	private Money() {}
+
+	/**
+	 * Converts an amount in dollars to the nearest whole number of cents.
+	 */
+	public static long toCents(double dollars) {
+		return Math.round(dollars * CENTS_PER_DOLLAR);
+	}
+
+	/**
+	 * Converts a number of cents to dollars, for callers that still
+	 * work in floating point.
+	 */
+	public static double toDollars(long cents) {
+		return (double) cents / CENTS_PER_DOLLAR;
+	}
+
+	/**
+	 * Parses a decimal amount of dollars, such as "1234.5" or "-0.05",
+	 * to cents.
+	 */
+	public static long parseCents(CharSequence text) {
+		return parseCents(text, 0, text.length());
+	}
+
+	/**
+	 * Parses a decimal amount of dollars found in the given range of
+	 * characters, ignoring spaces around it, to cents. Digits past the
+	 * cents are rounded, half up.
+	 *
+	 * @throws NumberFormatException if the text isn't a decimal number,
+	 *         or is too large to hold
+	 */
+	public static long parseCents(CharSequence text, int start, int end) {
+		while (start < end && text.charAt(start) == ' ') {
+			++start;
+		}
+		while (end > start && text.charAt(end - 1) == ' ') {
+			--end;
+		}
+
+		int position = start;
+		boolean negative = false;
+		if (position < end &&
+				(text.charAt(position) == '-' || text.charAt(position) == '+')) {
+			negative = text.charAt(position++) == '-';
+		}
+
+		long dollars = 0;
+		int digits = 0;
+		char c = 0;
+		while (position < end && (c = text.charAt(position)) >= '0' && c <= '9') {
+			if (dollars > (Long.MAX_VALUE / CENTS_PER_DOLLAR - 9) / 10) {
+				throw badNumber(text, start, end);
+			}
+			dollars = dollars * 10 + (c - '0');
+			++digits;
+			++position;
+		}
+
+		long cents = 0;
+		if (position < end && c == '.') {
+			++position;
+			int places = 0;
+			while (position < end && (c = text.charAt(position)) >= '0' && c <= '9') {
+				if (places < 2) {
+					cents = cents * 10 + (c - '0');
+				} else if (places == 2 && c >= '5') {
+					++cents;
+				}
+				++places;
+				++digits;
+				++position;
+			}
+			for (; places < 2; ++places) {
+				cents *= 10;
+			}
+		}
+
+		if (digits == 0 || position != end) {
+			throw badNumber(text, start, end);
+		}
+		long result = dollars * CENTS_PER_DOLLAR + cents;
+		return negative ? -result : result;
+	}
+
+	private static NumberFormatException badNumber
+			(CharSequence text, int start, int end) {
+		return new NumberFormatException
+			("Not an amount of money: \"" + text.subSequence(start, end) + "\"");
+	}
+
+	/**
+	 * Appends a number of cents as dollars with two decimal places,
+	 * such as "1234.50" or "-0.05".
+	 */
+	public static StringBuilder append(StringBuilder out, long cents) {
+		long dollars = cents / CENTS_PER_DOLLAR;
+		long remainder = cents % CENTS_PER_DOLLAR;
+		if (cents < 0) {
+			out.append('-');
+			dollars = -dollars;
+			remainder = -remainder;
+		}
+
+		out.append(dollars).append('.');
+		if (remainder < 10) {
+			out.append('0');
+		}
+		return out.append(remainder);
+	}
+
+	/**
+	 * Formats a number of cents as dollars with two decimal places.
+	 */
+	public static String format(long cents) {
+		return append(new StringBuilder(24), cents).toString();
+	}
+
+	/**
+	 * Sums the amounts of the given invoices, exactly.
+	 */
+	public static long sumCents(Iterable<Invoice> invoices) {
+		long total = 0;
+		for (Invoice invoice : invoices) {
+			total += invoice.getCents();
+		}
+		return total;
+	}
+}
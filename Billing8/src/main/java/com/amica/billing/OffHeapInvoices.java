@@ -0,0 +1,349 @@
+package com.amica.billing;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import lombok.SneakyThrows;
+
+/**
+ * Map of invoices by number that keeps them outside the Java heap, as
+ * fixed-size records in direct {@link ByteBuffer}s, or in buffers mapped
+ * from a scratch file so that the operating system can page them out.
+ * Each record holds the
+ * number, a customer id, the amount in cents and the two dates as epoch
+ * days; customers are kept on the heap in a {@link CustomerDictionary},
+ * so a record never refers to a heap object. The map from numbers to records is an
+ * open-addressing table in one int array, and so the garbage collector
+ * has a few large arrays to look at, however many invoices we hold.
+ *
+ * An {@link Invoice} is built each time one is read; it is a copy, and
+ * changes to it are stored only by {@link #put put()}ting it back.
+ * Iteration is in order by invoice number. Invoices can't be removed.
+ *
+ * Only the {@link Updater} keeps its invoices here; the {@link Reporter}
+ * keeps them on the heap, as its indexes hold the invoice objects.
+ *
+ * @author Will Provost
+ */
+public class OffHeapInvoices extends AbstractMap<Integer,Invoice>
+		implements InvoiceStore {
+
+	public static final int DEFAULT_CHUNK_RECORDS = 1 << 16;
+
+	static final int RECORD_SIZE = 24;
+	private static final int NUMBER = 0;
+	private static final int CUSTOMER = 4;
+	private static final int CENTS = 8;
+	private static final int DATE = 16;
+	private static final int PAID_DATE = 20;
+	private static final int NO_DATE = Integer.MIN_VALUE;
+
+	private int chunkRecords;
+	private Path file;
+	private List<ByteBuffer> chunks = new ArrayList<>();
+	private int size;
+	private int maxNumber;
+
+	private CustomerDictionary customers = new CustomerDictionary();
+
+	private int[] table = new int[16];
+
+	public OffHeapInvoices() {
+		this(DEFAULT_CHUNK_RECORDS);
+	}
+
+	/**
+	 * Stores records in chunks of the given number of records each.
+	 */
+	public OffHeapInvoices(int chunkRecords) {
+		if (chunkRecords <= 0) {
+			throw new IllegalArgumentException
+				("Records per chunk must be positive: " + chunkRecords);
+		}
+		this.chunkRecords = chunkRecords;
+	}
+
+	/**
+	 * Stores records in chunks mapped from a new scratch file in the given
+	 * directory. The file is ours alone, and is deleted when the JVM exits.
+	 */
+	@SneakyThrows
+	public OffHeapInvoices(int chunkRecords, Path directory) {
+		this(chunkRecords);
+		file = Files.createTempFile(directory, "invoices", ".dat");
+		file.toFile().deleteOnExit();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getMaxNumber() {
+		return maxNumber;
+	}
+
+	/**
+	 * Returns the scratch file our records are mapped from, or null if
+	 * they're in direct buffers.
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of bytes held outside the heap.
+	 */
+	public long getOffHeapBytes() {
+		return (long) chunks.size() * chunkRecords * RECORD_SIZE;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && find((Integer) key) >= 0;
+	}
+
+	@Override
+	public Invoice get(Object key) {
+		int row = key instanceof Integer ? find((Integer) key) : -1;
+		return row >= 0 ? read(row) : null;
+	}
+
+	/**
+	 * Stores a copy of the given invoice, which must have the given number,
+	 * replacing any we hold with that number.
+	 */
+	@Override
+	public Invoice put(Integer number, Invoice invoice) {
+		if (number.intValue() != invoice.getNumber()) {
+			throw new IllegalArgumentException("Invoice " +
+				invoice.getNumber() + " can't be stored as number " + number);
+		}
+
+		int row = find(number);
+		if (row >= 0) {
+			Invoice previous = read(row);
+			write(row, invoice);
+			return previous;
+		}
+
+		if (size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("No room for more invoices.");
+		}
+		if ((size + 1) * 2 > table.length) {
+			rehash(table.length * 2);
+		}
+		row = size++;
+		if (row / chunkRecords == chunks.size()) {
+			chunks.add(newChunk());
+		}
+		write(row, invoice);
+		insert(number, row);
+		maxNumber = size == 1 ? number : Math.max(maxNumber, number);
+		return null;
+	}
+
+	/**
+	 * Drops all of our invoices, keeping our buffers to be filled again
+	 * from the start, so that no new memory or mappings are needed
+	 * until we hold more invoices than before.
+	 */
+	@Override
+	public void clear() {
+		customers = new CustomerDictionary();
+		table = new int[16];
+		size = 0;
+		maxNumber = 0;
+	}
+
+	@Override
+	public Set<Integer> keySet() {
+		return new InOrder<>(this::numberAt);
+	}
+
+	@Override
+	public Set<Map.Entry<Integer,Invoice>> entrySet() {
+		return new InOrder<>(row -> new AbstractMap.SimpleImmutableEntry<>
+				(numberAt(row), read(row)));
+	}
+
+	/**
+	 * Helper to allocate the next chunk, mapping it from the next region
+	 * of our file if we have one. The mapping outlives the channel.
+	 */
+	@SneakyThrows
+	private ByteBuffer newChunk() {
+		int bytes = chunkRecords * RECORD_SIZE;
+		if (file == null) {
+			return ByteBuffer.allocateDirect(bytes);
+		}
+		try ( FileChannel channel = FileChannel.open(file, 
+				StandardOpenOption.READ, StandardOpenOption.WRITE); ) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 
+					(long) chunks.size() * bytes, bytes);
+		}
+	}
+
+	/**
+	 * Helper to find the chunk that holds the given row.
+	 */
+	private ByteBuffer chunkOf(int row) {
+		return chunks.get(row / chunkRecords);
+	}
+
+	/**
+	 * Helper to find where the given row starts within its chunk.
+	 */
+	private int offsetOf(int row) {
+		return (row % chunkRecords) * RECORD_SIZE;
+	}
+
+	private int numberAt(int row) {
+		return chunkOf(row).getInt(offsetOf(row) + NUMBER);
+	}
+
+	/**
+	 * Helper to build an invoice from the given row.
+	 */
+	private Invoice read(int row) {
+		ByteBuffer chunk = chunkOf(row);
+		int offset = offsetOf(row);
+		return Invoice.ofCents(chunk.getInt(offset + NUMBER),
+				customers.get(chunk.getInt(offset + CUSTOMER)),
+				chunk.getLong(offset + CENTS),
+				toDate(chunk.getInt(offset + DATE)),
+				toDate(chunk.getInt(offset + PAID_DATE)));
+	}
+
+	/**
+	 * Helper to write the given invoice into the given row.
+	 */
+	private void write(int row, Invoice invoice) {
+		ByteBuffer chunk = chunkOf(row);
+		int offset = offsetOf(row);
+		chunk.putInt(offset + NUMBER, invoice.getNumber());
+		chunk.putInt(offset + CUSTOMER, customers.add(invoice.getCustomer()));
+		chunk.putLong(offset + CENTS, invoice.getCents());
+		chunk.putInt(offset + DATE, toEpochDay(invoice.getTheDate()));
+		chunk.putInt(offset + PAID_DATE, toEpochDay(invoice.getPaidDate()));
+	}
+
+	private static int toEpochDay(LocalDate date) {
+		return date != null ? Math.toIntExact(date.toEpochDay()) : NO_DATE;
+	}
+
+	private static LocalDate toDate(int epochDay) {
+		return epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+	}
+
+	/**
+	 * Helper to spread invoice numbers, which are often sequential,
+	 * across the table.
+	 */
+	private static int hash(int number) {
+		int hash = number * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Helper to find the row holding the given number, or -1. Each slot of
+	 * the table holds a row plus one, so that zero marks an empty slot.
+	 */
+	private int find(int number) {
+		int mask = table.length - 1;
+		for (int slot = hash(number) & mask; table[slot] != 0;
+				slot = (slot + 1) & mask) {
+			int row = table[slot] - 1;
+			if (numberAt(row) == number) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	private void insert(int number, int row) {
+		int mask = table.length - 1;
+		int slot = hash(number) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = row + 1;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for (int row = 0; row < size; ++row) {
+			insert(numberAt(row), row);
+		}
+	}
+
+	/**
+	 * Helper to list the rows in order by invoice number. We sort numbers
+	 * and rows packed together in longs, so as not to box either of them.
+	 */
+	private int[] rowsInOrder() {
+		long[] keys = new long[size];
+		for (int row = 0; row < size; ++row) {
+			keys[row] = ((long) numberAt(row) << 32) | row;
+		}
+		Arrays.sort(keys);
+
+		int[] rows = new int[size];
+		for (int i = 0; i < size; ++i) {
+			rows[i] = (int) keys[i];
+		}
+		return rows;
+	}
+
+	/**
+	 * A view of our rows in order by number, each row seen through
+	 * the given function.
+	 */
+	private class InOrder<T> extends AbstractSet<T> {
+
+		private IntFunction<T> element;
+
+		public InOrder(IntFunction<T> element) {
+			this.element = element;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			int[] rows = rowsInOrder();
+			return new Iterator<T>() {
+				private int next;
+
+				public boolean hasNext() {
+					return next < rows.length;
+				}
+
+				public T next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return element.apply(rows[next++]);
+				}
+			};
+		}
+	}
+}
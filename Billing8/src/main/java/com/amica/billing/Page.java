@@ -0,0 +1,49 @@
+package com.amica.billing;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of a query result: the items, the offset of the first of them
+ * in the full result, and whether there are more items after this page.
+ *
+ * @author Will Provost
+ */
+@Getter
+@AllArgsConstructor
+public class Page<T> {
+
+	private List<T> items;
+	private int offset;
+	private boolean more;
+
+	/**
+	 * Takes a page of at most the given number of items from a stream that
+	 * starts at the given offset. We read one item past the page, and only
+	 * that far, to find out whether there are more.
+	 */
+	public static <T> Page<T> of(Stream<T> stream, int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException(String.format
+				("Bad page request: offset=%d, limit=%d", offset, limit));
+		}
+
+		List<T> items = stream.limit(limit + 1L).collect(Collectors.toList());
+		boolean more = items.size() > limit;
+		if (more) {
+			items.remove(limit);
+		}
+		return new Page<>(items, offset, more);
+	}
+
+	/**
+	 * The offset at which the next page starts.
+	 */
+	public int getNextOffset() {
+		return offset + items.size();
+	}
+}
@@ -2,27 +2,45 @@ package com.amica.billing;
 
 import static com.amica.billing.Reporter.CONFIGURATION_NAME;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 
 import com.amica.acm.configuration.component.ComponentConfigurationsManager;
 import com.amica.billing.parse.ApacheCSVParser;
 import com.amica.billing.parse.CSVParser;
+import com.amica.billing.parse.Compression;
 import com.amica.billing.parse.FlatParser;
+import com.amica.billing.parse.FormatDetector;
 import com.amica.billing.parse.JSONParser;
 import com.amica.billing.parse.Parser;
 import com.amica.escm.configuration.api.Configuration;
 import com.amica.escm.configuration.properties.PropertiesConfiguration;
 import com.amica.billing.parse.Producer;
 
+import lombok.SneakyThrows;
 import lombok.extern.java.Log;
 
 /**
  * A factory for parsers that determines which type of parser to create
- * based on the extension of given filenames.
+ * based on the content or the extension of given files.
+ * Compressed files are recognized, and their decompressed content is checked.
+ * The environment configuration is looked up once per environment, and 
+ * configured parser classes are resolved to constructor handles once per
+ * class name, so creating parsers per file or per shard stays cheap.
+ * Parsers that hold no per-instance state are shared; 
+ * see {@link #clearCaches clearCaches()} if configuration changes at runtime.
  * 
  * @author Will Provost
  */
@@ -34,34 +52,114 @@ public class ParserFactory {
 	
 	public static Map<Parser.Format,Supplier<Producer>> parsers = new HashMap<>();
 	
+	/**
+	 * JSON parsing is stateless apart from a thread-safe ObjectMapper,
+	 * which is expensive to build, so we share one instance.
+	 */
+	private static final JSONParser JSON_PARSER = new JSONParser();
+	
+	private static final Configuration NO_CONFIGURATION =
+			new PropertiesConfiguration(new Properties());
+	
+	private static Map<String,Configuration> configurations = 
+			new ConcurrentHashMap<>();
+	private static Map<String,Supplier<Producer>> configuredParsers = 
+			new ConcurrentHashMap<>();
+	
 	static {
 		parsers.put(Parser.Format.CSV, CSVParser::new);
 		parsers.put(Parser.Format.FLAT, FlatParser::new);
 		parsers.put(Parser.Format.EXPORT, ApacheCSVParser::createExportParser);
 		parsers.put(Parser.Format.EXCEL, ApacheCSVParser::createExcelParser);
-		parsers.put(Parser.Format.JSON, JSONParser::new);
+		parsers.put(Parser.Format.JSON, () -> JSON_PARSER);
 		parsers.put(Parser.Format.DEFAULT, CSVParser::new);
 	}
+	
+	/**
+	 * Discards cached configurations and parser constructors, so that
+	 * the next request will look them up again.
+	 */
+	public static void clearCaches() {
+		configurations.clear();
+		configuredParsers.clear();
+	}
 
 	/**
-	 * Looks up the file extension to find a 
-	 * <code>Supplier&lt;Parser&gt;</code>, invokes it, and returns the result. 
+	 * Finds the format named by the file extension -- the text after the 
+	 * last dot, not counting a compression extension such as ".gz" --
+	 * or returns null if there is no known extension.
 	 */
-	public static Producer createParser(String filename) {
-		int separatorIndex = filename.indexOf(".");
+	public static Parser.Format formatForExtension(String filename) {
+		String name = Compression.stripExtension(filename);
+		int separatorIndex = name.lastIndexOf(".");
 		if (separatorIndex != -1) {
-			String extension = filename.substring(separatorIndex + 1);
+			String extension = name.substring(separatorIndex + 1);
 			for (Parser.Format format : Parser.Format.values()) {
 				if (format.toString().equalsIgnoreCase(extension)) {
-					return createParser(format);
+					return format;
 				}
 			}
-			log.fine(() -> "Unknown format " + extension + "; using default parser.");
+			log.fine(() -> "Unknown format " + extension + ".");
 		} else {
-			log.fine(() -> "No file extension; using default parser.");
+			log.fine(() -> "No file extension.");
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Determines the format of the given file: by its content if the file
+	 * exists and we can recognize it, otherwise by its extension, and
+	 * otherwise we fall back to the default format.
+	 */
+	public static Parser.Format detectFormat(String filename) {
+		File file = new File(filename);
+		if (file.isFile()) {
+			try (InputStream in = new BufferedInputStream
+					(new FileInputStream(file), FormatDetector.SNIFF_LENGTH)) {
+				Parser.Format format = FormatDetector.detect(in).getFormat();
+				if (format != null) {
+					return format;
+				}
+			} catch (IOException ex) {
+				log.fine(() -> "Couldn't read " + filename + 
+						" to detect its format.");
+			}
 		}
 		
-		return createParser(Parser.Format.DEFAULT);
+		Parser.Format format = formatForExtension(filename);
+		if (format == null) {
+			log.fine(() -> "Unknown format for " + filename + 
+					"; using default parser.");
+		}
+		return format != null ? format : Parser.Format.DEFAULT;
+	}
+	
+	/**
+	 * Detects the format of the given file, and creates a parser for it.
+	 */
+	public static Producer createParser(String filename) {
+		return createParser(detectFormat(filename));
+	}
+	
+	/**
+	 * Detects the format of the given file, and creates a parser for it,
+	 * unless the configuration names a parser class.
+	 */
+	public static Producer createParser(Configuration configuration, 
+			String filename) {
+		return createParser(configuration, 
+				configuration.containsKey(PARSER_CLASS_PROPERTY)
+					? Parser.Format.DEFAULT : detectFormat(filename));
+	}
+	
+	/**
+	 * Peeks at the given stream, which must support mark/reset, to detect
+	 * its format, and creates a parser for it. The stream is left as it was.
+	 */
+	public static Producer createParser(InputStream in) throws IOException {
+		Parser.Format format = FormatDetector.detect(in).getFormat();
+		return createParser(format != null ? format : Parser.Format.DEFAULT);
 	}
 	
 	/**
@@ -69,20 +167,56 @@ public class ParserFactory {
 	 * <code>Supplier&lt;Parser&gt;</code>, invokes it, and returns the result. 
 	 */
 	public static Producer createParser(Parser.Format format) {
-		Configuration configuration = new PropertiesConfiguration(new Properties());
-		if (System.getProperty("server.env") != null) {
-			try {
-				configuration = ComponentConfigurationsManager
-						.getDefaultComponentConfiguration()
-						.getConfiguration(CONFIGURATION_NAME);
-			} catch (Throwable ex) {
-				log.fine(() -> "No parser configuration found; using default mappings.");
-			}
-		}
+		String environment = System.getProperty("server.env");
+		Configuration configuration = environment != null
+				? configurations.computeIfAbsent
+					(environment, ParserFactory::lookUpConfiguration)
+				: NO_CONFIGURATION;
 		
 		return createParser(configuration, format);
 	}
 	
+	/**
+	 * Helper to find the configuration for the current environment,
+	 * falling back to an empty configuration.
+	 */
+	private static Configuration lookUpConfiguration(String environment) {
+		try {
+			return ComponentConfigurationsManager
+					.getDefaultComponentConfiguration()
+					.getConfiguration(CONFIGURATION_NAME);
+		} catch (Throwable ex) {
+			log.fine(() -> "No parser configuration found; using default mappings.");
+		}
+		
+		return NO_CONFIGURATION;
+	}
+	
+	/**
+	 * Helper to resolve a parser class to a handle on its no-argument 
+	 * constructor, wrapped as a supplier.
+	 */
+	private static Supplier<Producer> createSupplier(String parserClassName) {
+		try {
+			Class<? extends Producer> parserClass = 
+					Class.forName(parserClassName).asSubclass(Producer.class);
+			MethodHandle constructor = MethodHandles.publicLookup()
+					.findConstructor(parserClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Producer.class));
+			return () -> construct(constructor);
+		} catch (Exception ex) {
+			throw new IllegalArgumentException(ex);
+		}
+	}
+	
+	/**
+	 * Helper to invoke a constructor handle.
+	 */
+	@SneakyThrows
+	private static Producer construct(MethodHandle constructor) {
+		return (Producer) constructor.invokeExact();
+	}
+	
 	/**
 	 * Looks up the file extension to find a 
 	 * <code>Supplier&lt;Parser&gt;</code>, invokes it, and returns the result. 
@@ -92,8 +226,8 @@ public class ParserFactory {
 		if (configuration.containsKey(PARSER_CLASS_PROPERTY)) {
 			String parserClassName = configuration.getString(PARSER_CLASS_PROPERTY);
 			try {
-				Class<?> parserClass = Class.forName(parserClassName);
-				return (Producer) parserClass.newInstance();
+				return configuredParsers.computeIfAbsent
+						(parserClassName, ParserFactory::createSupplier).get();
 			} catch (Exception ex) {
 				log.log(Level.WARNING, String.format("%s=%s", 
 						PARSER_CLASS_PROPERTY, parserClassName));
@@ -0,0 +1,180 @@
+package com.amica.billing;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+
+/**
+ * Bounded cache of query results, evicting the least recently used entry
+ * when it is full. Each entry records the customer whose data it was
+ * built from, if only one, and the kinds of {@link Change} that would
+ * make it stale; so a change to one customer's data invalidates only that
+ * customer's entries and the entries that span all customers, and only
+ * those that depend on that kind of change.
+ *
+ * @author Will Provost
+ */
+public class QueryCache {
+
+	/**
+	 * The kinds of change to the data that can make a result stale.
+	 */
+	public enum Change { CUSTOMER_ADDED, INVOICE_ADDED, INVOICE_PAID }
+
+	/**
+	 * Identifies a result by query and parameters. The scope and
+	 * dependencies go along for the ride, and aren't part of identity.
+	 */
+	private static class Key {
+		private String query;
+		private List<Object> parameters;
+		private Customer scope;
+		private Set<Change> dependencies;
+
+		public Key(String query, Object[] parameters,
+				Customer scope, Set<Change> dependencies) {
+			this.query = query;
+			this.parameters = Arrays.asList(parameters);
+			this.scope = scope;
+			this.dependencies = dependencies;
+		}
+
+		public boolean isStaleAfter(Change change, Customer customer) {
+			return dependencies.contains(change) &&
+				(scope == null || scope.equals(customer));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key &&
+				query.equals(((Key) other).query) &&
+				parameters.equals(((Key) other).parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * query.hashCode() + parameters.hashCode();
+		}
+	}
+
+	@Getter
+	private int maxEntries;
+	private Map<Key,Object> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	public QueryCache(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException
+				("Cache must hold at least one entry: " + maxEntries);
+		}
+
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Key,Object>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Object> eldest) {
+				if (size() > QueryCache.this.maxEntries) {
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets the cached result of the given query with the given parameters,
+	 * or computes and caches it. The scope is the one customer whose data
+	 * the result depends on, or null if it depends on all of them.
+	 * The result is computed outside of our lock, so two threads asking
+	 * at once for the same missing result may both compute it.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R get(String query, Customer scope, Set<Change> dependencies,
+			Supplier<R> compute, Object... parameters) {
+		Key key = new Key(query, parameters, scope, dependencies);
+		synchronized (this) {
+			Object result = entries.get(key);
+			if (result != null) {
+				++hits;
+				return (R) result;
+			}
+			++misses;
+		}
+
+		R result = compute.get();
+		if (result != null) {
+			synchronized (this) {
+				entries.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the entries made stale by the given kind of change
+	 * to the given customer's data.
+	 */
+	public synchronized void invalidate(Change change, Customer customer) {
+		Iterator<Key> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().isStaleAfter(change, customer)) {
+				keys.remove();
+				++invalidations;
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		invalidations += entries.size();
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * The fraction of requests that were answered from the cache.
+	 */
+	public synchronized double getHitRate() {
+		long requests = hits + misses;
+		return requests != 0 ? (double) hits / requests : 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format
+			("QueryCache: %d/%d entries, %d hits, %d misses, %d evictions, " +
+				"%d invalidations", entries.size(), maxEntries, hits, misses,
+				evictions, invalidations);
+	}
+}
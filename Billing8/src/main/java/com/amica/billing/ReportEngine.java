@@ -0,0 +1,120 @@
+package com.amica.billing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Runs any number of reports over one pass of the invoices. Each report is
+ * a {@link Collector} of invoices, such as those offered by the
+ * {@link Reporter}; registering one returns a {@link Key} by which its
+ * result can be found once the engine has run. The reports' intermediate
+ * states travel together, so on a parallel stream each thread keeps its
+ * own state for every report and those are merged at the end.
+ *
+ * @author Will Provost
+ */
+public class ReportEngine {
+
+	/**
+	 * Identifies one registered report and the type of its result.
+	 */
+	public static class Key<R> {
+		private int index;
+
+		private Key(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The results of all reports from one run.
+	 */
+	public static class Results {
+		private Object[] results;
+
+		private Results(Object[] results) {
+			this.results = results;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <R> R get(Key<R> key) {
+			return (R) results[key.index];
+		}
+	}
+
+	private List<Collector<Invoice,Object,Object>> reports = new ArrayList<>();
+
+	/**
+	 * Adds a report, to be run with all the others.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> Key<R> register(Collector<Invoice,?,R> report) {
+		reports.add((Collector<Invoice,Object,Object>) report);
+		return new Key<>(reports.size() - 1);
+	}
+
+	/**
+	 * Combines the registered reports into a single collector,
+	 * whose state is an array holding the state for each report.
+	 */
+	@SuppressWarnings("unchecked")
+	public Collector<Invoice,Object[],Results> toCollector() {
+		int count = reports.size();
+		Supplier<Object>[] suppliers = new Supplier[count];
+		BiConsumer<Object,Invoice>[] accumulators = new BiConsumer[count];
+		BinaryOperator<Object>[] combiners = new BinaryOperator[count];
+		Function<Object,Object>[] finishers = new Function[count];
+		for (int i = 0; i < count; ++i) {
+			Collector<Invoice,Object,Object> report = reports.get(i);
+			suppliers[i] = report.supplier();
+			accumulators[i] = report.accumulator();
+			combiners[i] = report.combiner();
+			finishers[i] = report.finisher();
+		}
+		
+		return Collector.of(() -> {
+					Object[] states = new Object[count];
+					for (int i = 0; i < count; ++i) {
+						states[i] = suppliers[i].get();
+					}
+					return states;
+				}, (states, invoice) -> {
+					for (int i = 0; i < count; ++i) {
+						accumulators[i].accept(states[i], invoice);
+					}
+				}, (left, right) -> {
+					for (int i = 0; i < count; ++i) {
+						left[i] = combiners[i].apply(left[i], right[i]);
+					}
+					return left;
+				}, states -> {
+					Object[] results = new Object[count];
+					for (int i = 0; i < count; ++i) {
+						results[i] = finishers[i].apply(states[i]);
+					}
+					return new Results(results);
+				});
+	}
+
+	/**
+	 * Runs all of the registered reports over the given invoices.
+	 */
+	public Results run(Stream<Invoice> invoices) {
+		return invoices.collect(toCollector());
+	}
+
+	/**
+	 * Runs all of the registered reports over the given invoices,
+	 * optionally in parallel.
+	 */
+	public Results run(Collection<Invoice> invoices, boolean parallel) {
+		return run(parallel ? invoices.parallelStream() : invoices.stream());
+	}
+}
@@ -2,26 +2,46 @@ package com.amica.billing;
 
 import static java.util.function.Function.identity;
 
-import java.io.FileReader;
+import java.io.IOException;
 import java.io.Reader;
+import java.text.Collator;
 import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.amica.acm.configuration.component.ComponentConfigurationsManager;
+import com.amica.billing.QueryCache.Change;
+import com.amica.billing.parse.DataFiles;
 import com.amica.billing.parse.Parser;
+import com.amica.billing.parse.QuarantineRejectSink;
+import com.amica.billing.parse.RejectSink;
 import com.amica.escm.configuration.api.Configuration;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.extern.java.Log;
 
 /**
@@ -31,20 +51,40 @@ import lombok.extern.java.Log;
  * formats; and then can produce reports based on a few different queries
  * and relying on a generic {@link TextReporter report generator}. 
  * 
+ * Queries can run at once on any threads; updates are for one thread
+ * at a time, with no queries running.
+ * 
  * @author Will Provost
  */
 @Log
-public class Reporter {
+public class Reporter implements AutoCloseable {
 
 	public static final String CONFIGURATION_NAME = "Billing";
 	public static final String CUSTOMER_FILE_PROPERTY =
 			Reporter.class.getPackage().getName() + ".customerFile";
 	public static final String INVOICE_FILE_PROPERTY =
 			Reporter.class.getPackage().getName() + ".invoiceFile";
+	public static final String QUARANTINE_FILE_PROPERTY =
+			Reporter.class.getPackage().getName() + ".quarantineFile";
+	
+	public static final String SORT_LOCALE_PROPERTY =
+			Reporter.class.getPackage().getName() + ".sortLocale";
+	public static final String CACHE_SIZE_PROPERTY =
+			Reporter.class.getPackage().getName() + ".cacheSize";
+	public static final String PARALLELISM_PROPERTY =
+			Reporter.class.getPackage().getName() + ".parallelism";
+	public static final String LAZY_LOAD_PROPERTY =
+			Reporter.class.getPackage().getName() + ".lazyLoad";
+	public static final String LOAD_WAIT_PROPERTY =
+			Reporter.class.getPackage().getName() + ".loadWaitMillis";
+	
+	/**
+	 * Where we are in loading our data.
+	 */
+	public enum Status { LOADING, READY, FAILED }
 	
 	public static int compareByName(Customer a, Customer b) {
-		return (a.getLastName() + a.getFirstName()).compareTo
-				(b.getLastName() + b.getFirstName());
+		return a.getSortKey().compareTo(b.getSortKey());
 	}
 	
 	public static int compareByNumber(Invoice a, Invoice b) {
@@ -55,35 +95,155 @@ public class Reporter {
 		return a.getTheDate().compareTo(b.getTheDate());
 	}
 	
+	public static final Comparator<Customer> BY_NAME = Reporter::compareByName;
+	public static final Comparator<Invoice> BY_NUMBER = 
+			Reporter::compareByNumber;
+	public static final Comparator<Invoice> BY_DATE = Reporter::compareByDate;
+	
+	private static final Set<Change> ON_ANY_CHANGE = 
+			EnumSet.allOf(Change.class);
+	private static final Set<Change> ON_INVOICE_CHANGE = 
+			EnumSet.of(Change.INVOICE_ADDED, Change.INVOICE_PAID);
+	private static final Set<Change> ON_VOLUME_CHANGE = 
+			EnumSet.of(Change.CUSTOMER_ADDED, Change.INVOICE_ADDED);
+	
 	private Map<String,Customer> customers;
 	private List<Invoice> invoices;
+	private Map<Integer,Invoice> invoicesByNumber;
+	private DateIndex issuedIndex;
+	private DateIndex paidIndex;
+	private CustomerInvoices byCustomer;
+	
+	/**
+	 * If set, customers are listed in the collation order for a locale
+	 * instead of by their {@link Customer#getSortKey sort keys}.
+	 */
+	@Getter
+	private Collator collator;
+	
+	/**
+	 * Sets the collator, and so the order in which customers are listed.
+	 * Like a query, this waits for data that is still loading, so that the
+	 * loader and this don't both touch the collator and indexes at once.
+	 */
+	public void setCollator(Collator collator) {
+		awaitData();
+		this.collator = collator;
+		if (byCustomer != null) {
+			byCustomer.setCollator(collator);
+		}
+		if (queryCache != null) {
+			queryCache.clear();
+		}
+	}
+	
+	/**
+	 * If set, the results of the getter queries are cached, and are
+	 * invalidated as customers and invoices are added and paid. 
+	 * Cached results are shared, and so are unmodifiable.
+	 */
+	@Getter
+	@Setter
+	private QueryCache queryCache;
+	
+	/**
+	 * If set, queries over all of the invoices run as parallel streams on
+	 * this pool. A pool set by the caller stays theirs; one we build from
+	 * the configuration is shut down when we're {@link #close closed}.
+	 */
+	@Getter
+	private ForkJoinPool pool;
+	private boolean ownPool;
+	
+	/**
+	 * How long a query waits for data that is still loading;
+	 * if negative, the default, it waits as long as it takes.
+	 */
+	@Getter
+	@Setter
+	private long loadWaitMillis = -1;
+	
+	private final DataLoading loading;
 	
 	/**
 	 * Customer and invoice data is found in files whose names are provided
-	 * using the configuration manager.
+	 * using the configuration manager. Formats are detected unless a parser
+	 * is configured, the invoice file can name a set of 
+	 * {@link InvoiceShards shards}, and loading can be lazy; 
+	 * see {@link #getStatus}.
 	 */
 	public Reporter(Configuration configuration) {
 		
 		String customerFile = configuration.getString(CUSTOMER_FILE_PROPERTY);
 		String invoiceFile = configuration.getString(INVOICE_FILE_PROPERTY);
+		String quarantineFile = configuration.containsKey
+				(QUARANTINE_FILE_PROPERTY)
+			? configuration.getString(QUARANTINE_FILE_PROPERTY) : null;
+		if (configuration.containsKey(SORT_LOCALE_PROPERTY)) {
+			collator = Collator.getInstance(Locale.forLanguageTag
+					(configuration.getString(SORT_LOCALE_PROPERTY)));
+		}
+		if (configuration.containsKey(CACHE_SIZE_PROPERTY)) {
+			queryCache = new QueryCache(Integer.parseInt
+					(configuration.getString(CACHE_SIZE_PROPERTY)));
+		}
+		if (configuration.containsKey(PARALLELISM_PROPERTY)) {
+			pool = new ForkJoinPool(Integer.parseInt
+					(configuration.getString(PARALLELISM_PROPERTY)));
+			ownPool = true;
+		}
+		if (configuration.containsKey(LOAD_WAIT_PROPERTY)) {
+			loadWaitMillis = Long.parseLong
+					(configuration.getString(LOAD_WAIT_PROPERTY));
+		}
+		boolean lazy = configuration.containsKey(LAZY_LOAD_PROPERTY) &&
+			Boolean.parseBoolean(configuration.getString(LAZY_LOAD_PROPERTY));
+		
+		loading = new DataLoading(() -> readConfiguredData(configuration, 
+				customerFile, invoiceFile, quarantineFile), lazy);
+	}
+	
+	/**
+	 * Helper to read the configured files.
+	 */
+	private void readConfiguredData(Configuration configuration, 
+			String customerFile, String invoiceFile, String quarantineFile) {
 		
+		Parser customerParser = 
+				ParserFactory.createParser(configuration, customerFile);
 		try (
-			FileReader customerReader = new FileReader(customerFile);
-			FileReader invoiceReader = new FileReader(invoiceFile);
+			Reader customerReader = DataFiles.openReader(customerFile);
+			RejectSink rejectSink = quarantineFile != null 
+				? new QuarantineRejectSink(quarantineFile) : null;
 		) {
-			readData(customerReader, invoiceReader, 
-				ParserFactory.createParser(configuration, 
-					Parser.Format.DEFAULT));
+			if (rejectSink != null) {
+				customerParser.setRejectSink(rejectSink);
+			}
+			if (InvoiceShards.isSharded(invoiceFile)) {
+				readShardedData(customerReader, customerParser, 
+					new InvoiceShards(configuration, rejectSink), invoiceFile);
+			} else {
+				Parser invoiceParser = 
+						ParserFactory.createParser(configuration, invoiceFile);
+				if (rejectSink != null) {
+					invoiceParser.setRejectSink(rejectSink);
+				}
+				try ( Reader invoiceReader = DataFiles.openReader(invoiceFile); ) {
+					readData(customerReader, invoiceReader, 
+							customerParser, invoiceParser);
+				}
+			}
 		} catch (Exception ex) {
 			log.log(Level.SEVERE, String.format("%s=%s", 
 					CUSTOMER_FILE_PROPERTY, customerFile));
 			log.log(Level.SEVERE, String.format("%s=%s", 
 					INVOICE_FILE_PROPERTY, invoiceFile));
-			log.log(Level.SEVERE, "Couldn't load files as configured", ex);
+			throw new IllegalStateException
+				("Couldn't load files as configured", ex);
 		}
 	}
 
-		/**
+	/**
 	 * Customer and invoice data is found in files whose names are provided
 	 * using the configuration manager.
 	 */
@@ -111,30 +271,251 @@ public class Reporter {
 	public Reporter(Reader customerReader, Reader invoiceReader, 
 			Parser.Format format) {
 
-		readData(customerReader, invoiceReader, 
-				ParserFactory.createParser(format));
+		Parser parser = ParserFactory.createParser(format);
+		loading = new DataLoading(() -> readData
+				(customerReader, invoiceReader, parser, parser), false);
+	}
+	
+	/**
+	 * Tells whether our data is still loading, is ready, or couldn't
+	 * be loaded. Only a lazy reporter is ever seen to be loading.
+	 */
+	public Status getStatus() {
+		return loading.getStatus();
+	}
+	
+	public boolean isReady() {
+		return getStatus() == Status.READY;
+	}
+	
+	/**
+	 * Returns what went wrong in loading our data, or null if nothing has.
+	 */
+	public Throwable getLoadFailure() {
+		return loading.getFailure();
+	}
+	
+	/**
+	 * Waits up to the given time for our data to finish loading, and tells 
+	 * whether it is ready.
+	 */
+	public boolean awaitReady(long timeout, TimeUnit unit) 
+			throws InterruptedException {
+		return loading.awaitReady(timeout, unit);
+	}
+	
+	/**
+	 * Helper that every query calls before it touches our data, to wait
+	 * for up to the {@link #getLoadWaitMillis configured time}.
+	 */
+	private void awaitData() {
+		loading.await(loadWaitMillis);
 	}
 
 	/**
-	 * Helper to read the customer and invoice data.
+	 * Helper to read the customer and invoice data. If the invoice parser 
+	 * {@link Parser#supportsDeferredCustomers supports it}, we parse the
+	 * customers on another thread while we parse the invoices.
 	 */
 	private void readData(Reader customerReader, Reader invoiceReader, 
-			Parser parser) {
+			Parser customerParser, Parser invoiceParser) {
 		try {
-			customers = parser.parseCustomers(customerReader)
-					.collect(Collectors.toMap(Customer::getName, identity()));
-			invoices = parser.parseInvoices(invoiceReader, customers)
+			if (invoiceParser.supportsDeferredCustomers()) {
+				CompletableFuture<Map<String,Customer>> futureCustomers =
+					CompletableFuture.supplyAsync(() -> customerParser
+						.parseCustomers(customerReader).collect
+							(Collectors.toMap(Customer::getName, identity())));
+				List<Invoice> unresolved = invoiceParser
+						.parseInvoices(invoiceReader)
+						.collect(Collectors.toList());
+				customers = futureCustomers.join();
+				invoices = invoiceParser.resolveInvoices
+						(unresolved.stream(), customers)
 					.collect(Collectors.toList());
+			} else {
+				customers = customerParser.parseCustomers(customerReader)
+						.collect(Collectors.toMap(Customer::getName, identity()));
+				invoices = invoiceParser.parseInvoices(invoiceReader, customers)
+						.collect(Collectors.toList());
+			}
+			customerParser.flushRejects();
+			if (invoiceParser != customerParser) {
+				invoiceParser.flushRejects();
+			}
+			buildIndexes();
+		} catch (Exception ex) {
+			throw new IllegalStateException
+				("Couldn't load from given filenames.", ex);
+		}
+	}
+
+	/**
+	 * Helper to read the customer data and a set of invoice shards.
+	 */
+	private void readShardedData(Reader customerReader, Parser customerParser,
+			InvoiceShards shards, String invoiceFile) {
+		try {
+			customers = customerParser.parseCustomers(customerReader)
+					.collect(Collectors.toMap(Customer::getName, identity()));
+			customerParser.flushRejects();
+			invoices = new ArrayList<>
+					(shards.load(invoiceFile, customers).getInvoices().values());
+			buildIndexes();
 		} catch (Exception ex) {
-			log.log(Level.SEVERE, "Couldn't load from given filenames.", ex);
+			throw new IllegalStateException
+				("Couldn't load from given filenames.", ex);
+		}
+	}
+	
+	/**
+	 * Helper to index the invoices by number, by customer, and by issue and
+	 * paid dates; the date indexes are built on other threads.
+	 */
+	private void buildIndexes() {
+		CompletableFuture<DateIndex> issued = CompletableFuture.supplyAsync
+				(() -> new DateIndex(Invoice::getTheDate, invoices));
+		CompletableFuture<DateIndex> paid = CompletableFuture.supplyAsync
+				(() -> new DateIndex(Invoice::getPaidDate, invoices));
+		
+		byCustomer = new CustomerInvoices(customers.values(), invoices, collator);
+		invoicesByNumber = new HashMap<>();
+		for (Invoice invoice : invoices) {
+			invoicesByNumber.put(invoice.getNumber(), invoice);
+		}
+		issuedIndex = issued.join();
+		paidIndex = paid.join();
+	}
+	
+	/**
+	 * Helper to run a query through the cache, if we have one.
+	 */
+	private <R> R cached(String query, Customer scope, 
+			Set<Change> dependencies, Supplier<R> compute, 
+			Object... parameters) {
+		return queryCache != null
+			? queryCache.get(query, scope, dependencies, compute, parameters)
+			: compute.get();
+	}
+	
+	/**
+	 * Helper to stream all of the invoices, in parallel if the caller asks
+	 * for it or if we have a pool.
+	 */
+	private Stream<Invoice> streamInvoices(boolean parallel) {
+		return parallel || pool != null 
+			? invoices.parallelStream() : invoices.stream();
+	}
+	
+	/**
+	 * Helper to run a query on our pool, if we have one, so that the
+	 * parallel streams it uses are split among that pool's threads
+	 * rather than those of the common pool.
+	 */
+	private <R> R inPool(Supplier<R> query) {
+		return pool != null ? pool.submit(() -> query.get()).join() : query.get();
+	}
+	
+	/**
+	 * Sets the pool for queries. The caller keeps ownership of it; if we
+	 * built a pool of our own, we shut that one down now.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		if (ownPool && this.pool != pool) {
+			this.pool.shutdown();
+		}
+		this.pool = pool;
+		ownPool = false;
+	}
+	
+	/**
+	 * Shuts down the query pool, if it is one we built.
+	 */
+	@Override
+	public void close() {
+		if (ownPool) {
+			pool.shutdown();
+			ownPool = false;
+		}
+	}
+	
+	/**
+	 * Helper to tell the cache, if we have one, about a change.
+	 */
+	private void changed(Change change, Customer customer) {
+		if (queryCache != null) {
+			queryCache.invalidate(change, customer);
+		}
+	}
+	
+	/**
+	 * Adds a customer, who must not share a name with any we have.
+	 * Like the other updates, this mustn't overlap with any queries.
+	 */
+	public void addCustomer(Customer customer) {
+		awaitData();
+		if (customers.containsKey(customer.getName())) {
+			throw new IllegalArgumentException
+				("There is already a customer with the name " + 
+					customer.getName());
+		}
+		
+		customers.put(customer.getName(), customer);
+		byCustomer.add(customer);
+		changed(Change.CUSTOMER_ADDED, customer);
+	}
+	
+	/**
+	 * Adds an invoice, which must have a new number and must be for one of
+	 * our customers; we link it to our customer object by name.
+	 */
+	public void addInvoice(Invoice invoice) {
+		awaitData();
+		if (invoicesByNumber.containsKey(invoice.getNumber())) {
+			throw new IllegalArgumentException
+				("There is already an invoice with number " + 
+					invoice.getNumber());
+		}
+		Customer customer = customers.get(invoice.getCustomer().getName());
+		if (customer == null) {
+			throw new IllegalArgumentException
+				("No such customer: " + invoice.getCustomer().getName());
+		}
+		
+		invoice.setCustomer(customer);
+		invoices.add(invoice);
+		invoicesByNumber.put(invoice.getNumber(), invoice);
+		issuedIndex.add(invoice);
+		if (invoice.getPaidDate() != null) {
+			paidIndex.add(invoice);
+		}
+		byCustomer.add(invoice);
+		changed(Change.INVOICE_ADDED, customer);
+	}
+	
+	/**
+	 * Records payment of the invoice with the given number on the given date.
+	 */
+	public void payInvoice(int invoiceNumber, LocalDate paidDate) {
+		awaitData();
+		Invoice invoice = invoicesByNumber.get(invoiceNumber);
+		if (invoice == null) {
+			throw new IllegalArgumentException("No such invoice: " + invoiceNumber);
+		}
+		if (invoice.getPaidDate() != null) {
+			throw new IllegalStateException("Invoice " + invoiceNumber + 
+					" has already been paid.");
 		}
 		
+		invoice.setPaidDate(paidDate);
+		paidIndex.add(invoice);
+		changed(Change.INVOICE_PAID, invoice.getCustomer());
 	}
 	
 	/**
 	 * Get a collection of all customers.
 	 */
 	public Collection<Customer> getCustomers() {
+		awaitData();
 		return customers.values();
 	}
 	
@@ -142,6 +523,7 @@ public class Reporter {
 	 * Get a collection of all invoices.
 	 */
 	public Collection<Invoice> getInvoices() {
+		awaitData();
 		return invoices;
 	}
 	
@@ -150,12 +532,24 @@ public class Reporter {
 	 * customer, and generates the report. 
 	 */
 	public SortedSet<Invoice> getInvoicesForCustomer(String customerName) {
+		awaitData();
 
 		Customer customer = customers.get(customerName);
-		return (SortedSet<Invoice>) invoices.stream()
-				.filter(inv -> inv.getCustomer().equals(customer))
-				.collect(Collectors.toCollection(() -> new TreeSet<>
-					((Reporter::compareByNumber))));
+		return cached("invoicesForCustomer", customer, ON_ANY_CHANGE, () -> {
+				SortedSet<Invoice> result = new TreeSet<>(BY_NUMBER);
+				result.addAll(byCustomer.invoicesOf(customer));
+				return queryCache != null 
+					? Collections.unmodifiableSortedSet(result) : result;
+			}, customerName);
+	}
+	
+	/**
+	 * Streams the invoices for the given customer, in order by number,
+	 * straight from our index of invoices by customer.
+	 */
+	public Stream<Invoice> streamInvoicesForCustomer(String customerName) {
+		awaitData();
+		return byCustomer.invoicesOf(customers.get(customerName)).stream();
 	}
 
 	/**
@@ -164,53 +558,375 @@ public class Reporter {
 	 */
 	/*START String filename */
 	public SortedMap<Customer,SortedSet<Invoice>> getInvoicesByCustomer() {
-		
-		return customers.values().stream()
-			.collect(Collectors.toMap(identity(),
-				c -> getInvoicesForCustomer(c.getName()), 
-				(a, b) -> a, () -> new TreeMap<>(Reporter::compareByName)));
+		awaitData();
+		return cached("invoicesByCustomer", null, ON_ANY_CHANGE, () -> {
+				SortedMap<Customer,SortedSet<Invoice>> result = inPool(() ->
+					streamInvoices(false).collect(invoicesByCustomerReport()));
+				if (queryCache == null) {
+					return result;
+				}
+				result.replaceAll((customer, invoices) -> 
+					Collections.unmodifiableSortedSet(invoices));
+				return Collections.unmodifiableSortedMap(result);
+			});
 	}
 
+	/**
+	 * Streams all customers in order, even those without invoices, each
+	 * with their invoices in order by number. Entries are made as the
+	 * stream reaches them.
+	 */
+	public Stream<Map.Entry<Customer,List<Invoice>>> streamInvoicesByCustomer() {
+		awaitData();
+		return byCustomer.streamCustomers().map(customer -> 
+			new AbstractMap.SimpleImmutableEntry<>
+				(customer, byCustomer.invoicesOf(customer)));
+	}
+	
+	/**
+	 * Gets one page of {@link #streamInvoicesByCustomer invoices by customer},
+	 * starting at the given offset.
+	 */
+	public Page<Map.Entry<Customer,List<Invoice>>> getInvoicesByCustomer
+			(int offset, int limit) {
+		awaitData();
+		return Page.of(streamInvoicesByCustomer().skip(offset), offset, limit);
+	}
+	
+	/**
+	 * Gets the page of {@link #streamInvoicesByCustomer invoices by customer}
+	 * that follows the named customer, or the first page if the name is null.
+	 */
+	public Page<Map.Entry<Customer,List<Invoice>>> getInvoicesByCustomerAfter
+			(String customerName, int limit) {
+		awaitData();
+		int offset = 0;
+		if (customerName != null) {
+			Customer customer = customers.get(customerName);
+			if (customer == null) {
+				throw new IllegalArgumentException
+					("No such customer: " + customerName);
+			}
+			offset = byCustomer.positionOf(customer) + 1;
+		}
+		return getInvoicesByCustomer(offset, limit);
+	}
+	
 	/**
 	 * Builds an {@link Outline2} representation of overdue invoices, 
 	 * and generates the report. 
 	 */
 	/*START String filename */
 	public SortedSet<Invoice> getOverdueInvoices(LocalDate asOf) {
-		
-		return (SortedSet<Invoice>) invoices.stream()
-			.filter(invoice -> invoice.isOverdue(asOf))
-			.collect(Collectors.toCollection(() -> new TreeSet<>
-				(Reporter::compareByDate)));
+		awaitData();
+		return cached("overdueInvoices", null, ON_INVOICE_CHANGE, () -> {
+				SortedSet<Invoice> result = inPool(() ->
+					streamInvoices(false).collect(overdueInvoicesReport(asOf)));
+				return queryCache != null 
+					? Collections.unmodifiableSortedSet(result) : result;
+			}, asOf);
+	}
+	
+	/**
+	 * Streams the invoices overdue as of the given date, from the issue-date
+	 * index, in order by date and then by number. Unlike 
+	 * {@link #getOverdueInvoices}, invoices issued on the same date are
+	 * all listed.
+	 */
+	public Stream<Invoice> streamOverdueInvoices(LocalDate asOf) {
+		awaitData();
+		return issuedIndex.between(LocalDate.MIN, asOf)
+				.filter(invoice -> invoice.isOverdue(asOf));
+	}
+	
+	/**
+	 * Gets one page of {@link #streamOverdueInvoices overdue invoices},
+	 * starting at the given offset.
+	 */
+	public Page<Invoice> getOverdueInvoices(LocalDate asOf, 
+			int offset, int limit) {
+		awaitData();
+		return Page.of(streamOverdueInvoices(asOf).skip(offset), offset, limit);
+	}
+	
+	/**
+	 * Gets the page of {@link #streamOverdueInvoices overdue invoices}
+	 * that follows the given invoice. The page's offset isn't known,
+	 * and is reported as zero.
+	 */
+	public Page<Invoice> getOverdueInvoicesAfter(LocalDate asOf, 
+			Invoice invoice, int limit) {
+		awaitData();
+		return Page.of(issuedIndex.after(invoice, asOf)
+				.filter(inv -> inv.isOverdue(asOf)), 0, limit);
+	}
+	
+	/**
+	 * Gets the invoices issued between the given dates, inclusive,
+	 * in order by issue date. There are none if the first date is
+	 * after the second.
+	 */
+	public Stream<Invoice> getInvoicesIssuedBetween
+			(LocalDate from, LocalDate to) {
+		awaitData();
+		return issuedIndex.between(from, to);
+	}
+	
+	/**
+	 * Gets the invoices paid between the given dates, inclusive,
+	 * in order by paid date. Unpaid invoices are never included, and
+	 * there are none if the first date is after the second.
+	 */
+	public Stream<Invoice> getInvoicesPaidBetween(LocalDate from, LocalDate to) {
+		awaitData();
+		return paidIndex.between(from, to);
+	}
+	
+	/**
+	 * Builds the {@link Aging} of unpaid invoices as of the given date,
+	 * in one pass over the invoices.
+	 */
+	public Aging getAging(LocalDate asOf) {
+		awaitData();
+		return getAging(asOf, false);
+	}
+	
+	/**
+	 * Builds the {@link Aging} of unpaid invoices as of the given date.
+	 * In parallel mode, each thread ages its share of the invoices and 
+	 * the results are merged.
+	 */
+	public Aging getAging(LocalDate asOf, boolean parallel) {
+		awaitData();
+		return cached("aging", null, ON_INVOICE_CHANGE, () -> {
+				Aging result = inPool(() -> 
+					streamInvoices(parallel).collect(agingReport(asOf)));
+				return queryCache != null ? result.seal() : result;
+			}, asOf);
+	}
+	
+	/**
+	 * Writes the invoices for the given customer as a text report.
+	 */
+	public void writeInvoicesForCustomer(String customerName, 
+			TextReporter out) throws IOException {
+		awaitData();
+		out.writeInvoicesForCustomer(customerName, 
+				streamInvoicesForCustomer(customerName)::iterator);
+	}
+	
+	/**
+	 * Writes all invoices, grouped by customer, as a text report,
+	 * {@link #streamInvoicesByCustomer streaming} them from our index.
+	 */
+	public void writeInvoicesByCustomer(TextReporter out) throws IOException {
+		awaitData();
+		out.writeInvoicesByCustomer(streamInvoicesByCustomer().iterator());
+	}
+	
+	/**
+	 * Writes the invoices overdue as of the given date as a text report.
+	 */
+	public void writeOverdueInvoices(LocalDate asOf, TextReporter out) 
+			throws IOException {
+		awaitData();
+		out.writeOverdueInvoices(getOverdueInvoices(asOf));
+	}
+	
+	/**
+	 * Writes customers in descending order of volume as a text report.
+	 */
+	public void writeCustomersByVolume(TextReporter out) throws IOException {
+		awaitData();
+		out.writeCustomersByVolume(getCustomersByVolume(), customers::get);
+	}
+	
+	/**
+	 * Runs all the reports registered with the given engine in one pass
+	 * over the invoices.
+	 */
+	public ReportEngine.Results runReports(ReportEngine engine, 
+			boolean parallel) {
+		awaitData();
+		return inPool(() -> engine.run(invoices, parallel || pool != null));
+	}
+	
+	/**
+	 * Collector for the {@link #getInvoicesByCustomer invoices by customer}
+	 * report, to be run by itself or with others by a {@link ReportEngine}.
+	 * Every customer is listed, even those without invoices.
+	 */
+	public Collector<Invoice,?,SortedMap<Customer,SortedSet<Invoice>>>
+			invoicesByCustomerReport() {
+		awaitData();
+		Comparator<Customer> order = byCustomer.order();
+		Supplier<SortedMap<Customer,SortedSet<Invoice>>> newMap = 
+				() -> new TreeMap<>(order);
+		Supplier<SortedSet<Invoice>> newSet = () -> new TreeSet<>(BY_NUMBER);
+		return Collectors.collectingAndThen(Collectors.groupingBy
+				(Invoice::getCustomer, newMap, Collectors.toCollection(newSet)),
+			map -> {
+				for (Customer customer : customers.values()) {
+					map.computeIfAbsent(customer, c -> newSet.get());
+				}
+				return map;
+			});
+	}
+	
+	/**
+	 * Collector for the {@link #getOverdueInvoices overdue invoices} report.
+	 */
+	public Collector<Invoice,?,SortedSet<Invoice>> 
+			overdueInvoicesReport(LocalDate asOf) {
+		return Collector.<Invoice,SortedSet<Invoice>>of
+			(() -> new TreeSet<>(BY_DATE), 
+				(set, invoice) -> {
+					if (invoice.isOverdue(asOf)) {
+						set.add(invoice);
+					}
+				}, (left, right) -> {
+					left.addAll(right);
+					return left;
+				});
+	}
+	
+	/**
+	 * Collector for the {@link #getCustomersByVolume customers by volume}
+	 * report. Every customer is listed, even those without invoices.
+	 */
+	public Collector<Invoice,?,SortedSet<CustomerWithVolume>> 
+			customersByVolumeReport() {
+		awaitData();
+		return Collectors.collectingAndThen(byCustomer.totals(),
+			volumes -> byCustomer.withVolumes(volumes, false)
+				.collect(Collectors.toCollection(TreeSet::new)));
+	}
+	
+	/**
+	 * Collector for the {@link #getAging aging} report.
+	 */
+	public Collector<Invoice,?,Aging> agingReport(LocalDate asOf) {
+		awaitData();
+		return Collector.of(() -> new Aging(asOf, byCustomer.getDictionary()), 
+				Aging::add, Aging::merge);
 	}
 	
 	@Data
 	@NoArgsConstructor
-	@AllArgsConstructor
 	public static class CustomerWithVolume 
 			implements Comparable<CustomerWithVolume> {
 
 		private String customerName;
-		private double volume;
+		private long cents;
+		
+		private static final Comparator<String> NAME_ORDER =
+				Comparator.nullsFirst(Comparator.naturalOrder());
+		
+		public CustomerWithVolume(String customerName, double volume) {
+			this.customerName = customerName;
+			this.cents = Money.toCents(volume);
+		}
+		
+		/**
+		 * Pairs a customer with a volume given in cents. This is a factory
+		 * rather than a constructor so that a volume passed to the
+		 * constructor is still taken as dollars.
+		 */
+		public static CustomerWithVolume ofCents(String customerName, long cents) {
+			CustomerWithVolume result = new CustomerWithVolume();
+			result.customerName = customerName;
+			result.cents = cents;
+			return result;
+		}
 		
 		/**
 		 * Compare "them" to "us" by volume, so as to get descending order.
+		 * Customers with the same volume are ordered by name, so that
+		 * none of them are lost from a sorted set.
 		 */
 		public int compareTo(CustomerWithVolume other) {
-			return Double.compare(other.getVolume(), volume);
+			int result = Long.compare(other.getCents(), cents);
+			return result != 0 ? result 
+				: NAME_ORDER.compare(customerName, other.getCustomerName());
+		}
+		
+		public double getVolume() {
+			return Money.toDollars(cents);
+		}
+		
+		public void setVolume(double volume) {
+			cents = Money.toCents(volume);
 		}
 	}
 	
 	public double getVolume(Customer customer) {
-		return invoices.stream()
-				.filter(inv -> inv.getCustomer().equals(customer))
-				.mapToDouble(Invoice::getAmount)
-				.sum();
+		awaitData();
+		return Money.toDollars(Money.sumCents(byCustomer.invoicesOf(customer)));
+	}
+	
+	/**
+	 * Helper to total the invoice amounts for every customer in one pass.
+	 * Customers with no invoices have a volume of zero.
+	 */
+	private Stream<CustomerWithVolume> getVolumes(boolean parallel) {
+		return byCustomer.withVolumes(streamInvoices(parallel)
+				.collect(byCustomer.totals()), parallel || pool != null);
 	}
 	
 	public SortedSet<CustomerWithVolume> getCustomersByVolume() {
-		return (TreeSet<CustomerWithVolume>) customers.values().stream()
-				.map(c -> new CustomerWithVolume(c.getName(), getVolume(c)))
-				.collect(Collectors.toCollection(TreeSet::new));
+		awaitData();
+		return cached("customersByVolume", null, ON_VOLUME_CHANGE, () -> {
+				SortedSet<CustomerWithVolume> result = inPool(() -> 
+					streamInvoices(false).collect(customersByVolumeReport()));
+				return queryCache != null 
+					? Collections.unmodifiableSortedSet(result) : result;
+			});
+	}
+	
+	/**
+	 * Gets one page of customers in descending order of volume, keeping
+	 * only the top customers through the end of the page.
+	 */
+	public Page<CustomerWithVolume> getCustomersByVolume(int offset, int limit) {
+		awaitData();
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException(String.format
+				("Bad page request: offset=%d, limit=%d", offset, limit));
+		}
+		
+		int through = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit + 1);
+		return Page.of(getTopCustomersByVolume(through).stream().skip(offset),
+				offset, limit);
+	}
+	
+	/**
+	 * Gets the k customers with the greatest volume, in descending order,
+	 * without sorting all of the customers. Ties are broken by name.
+	 */
+	public List<CustomerWithVolume> getTopCustomersByVolume(int k) {
+		awaitData();
+		return getTopCustomersByVolume(k, false);
+	}
+	
+	/**
+	 * Gets the k customers with the greatest volume, in descending order.
+	 * In parallel mode, each thread keeps its own {@link TopK top k}.
+	 */
+	public List<CustomerWithVolume> getTopCustomersByVolume
+			(int k, boolean parallel) {
+		awaitData();
+		if (k < 0) {
+			throw new IllegalArgumentException
+				("Can't get a negative number of customers: " + k);
+		}
+		
+		return cached("topCustomersByVolume", null, ON_VOLUME_CHANGE, () -> {
+				List<CustomerWithVolume> result = inPool(() -> 
+					getVolumes(parallel).collect(Collector.of(() -> 
+						new TopK<CustomerWithVolume>(k, Comparator.naturalOrder()), 
+							TopK::add, TopK::merge, TopK::toList)));
+				return queryCache != null 
+					? Collections.unmodifiableList(result) : result;
+			}, k);
 	}
 }
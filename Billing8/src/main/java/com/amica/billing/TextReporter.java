@@ -0,0 +1,266 @@
+package com.amica.billing;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amica.billing.Reporter.CustomerWithVolume;
+
+/**
+ * Writes the text reports as outlines, in plain, bulleted or numbered
+ * {@link Style}. Each line is built in a buffer that is reused from line
+ * to line and written straight to the underlying writer, and results are
+ * consumed as they are iterated, so a report of any size is written
+ * without building it up in memory first.
+ *
+ * @author Will Provost
+ */
+public class TextReporter implements Flushable {
+
+	/**
+	 * How outline items are marked.
+	 */
+	public enum Style { PLAIN, BULLETED, NUMBERED }
+
+	public static final String INVOICES_BY_CUSTOMER_TITLE =
+			"All invoices, by customer";
+	public static final String OVERDUE_INVOICES_TITLE = "Overdue invoices";
+	public static final String CUSTOMERS_BY_VOLUME_TITLE =
+			"Customers in descending order of total business";
+	public static final String INVOICES_FOR_CUSTOMER_TITLE = "Invoices for ";
+
+	private static final int TOP = 0;
+	private static final int MIDDLE = 1;
+	private static final int DETAIL = 2;
+	private static final int[] INDENTS = { 0, 2, 4 };
+
+	private Writer out;
+	private Style style;
+	private int[] counters = new int[INDENTS.length];
+	private StringBuilder line = new StringBuilder(128);
+	private char[] chars = new char[128];
+
+	public TextReporter(Writer out, Style style) {
+		this.out = out instanceof BufferedWriter
+				? out : new BufferedWriter(out);
+		this.style = style;
+	}
+
+	public TextReporter(Writer out) {
+		this(out, Style.PLAIN);
+	}
+
+	/**
+	 * Helper to write the line we've built, and clear it for the next one.
+	 */
+	private void endLine() throws IOException {
+		line.append('\n');
+		int length = line.length();
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		line.getChars(0, length, chars, 0);
+		out.write(chars, 0, length);
+		line.setLength(0);
+	}
+
+	/**
+	 * Helper to start a report with its title.
+	 */
+	private void title(CharSequence title, CharSequence detail)
+			throws IOException {
+		line.append(title).append(detail);
+		endLine();
+		for (int i = 0; i < counters.length; ++i) {
+			counters[i] = 0;
+		}
+	}
+
+	/**
+	 * Helper to start an outline item at the given level, with its
+	 * indentation and marker. Top-level items are set off by blank lines.
+	 */
+	private StringBuilder item(int level) throws IOException {
+		if (level == TOP) {
+			endLine();
+		}
+		int number = ++counters[level];
+		for (int i = level + 1; i < counters.length; ++i) {
+			counters[i] = 0;
+		}
+
+		for (int i = 0; i < INDENTS[level]; ++i) {
+			line.append(' ');
+		}
+		if (style == Style.BULLETED) {
+			line.append("* ");
+		} else if (style == Style.NUMBERED) {
+			line.append(number).append(". ");
+		}
+		return line;
+	}
+
+	/**
+	 * Helper to append an amount in cents as dollars and cents.
+	 */
+	private void appendAmount(long cents) {
+		line.append('$');
+		Money.append(line, cents);
+	}
+
+	/**
+	 * Helper to append a date as M/d/yyyy.
+	 */
+	private void appendDate(LocalDate date) {
+		line.append(date.getMonthValue()).append('/')
+			.append(date.getDayOfMonth()).append('/')
+			.append(date.getYear());
+	}
+
+	/**
+	 * Helper to write the amount and dates of an invoice.
+	 */
+	private void invoiceDetails(Invoice invoice) throws IOException {
+		item(DETAIL).append("Amount: ");
+		appendAmount(invoice.getCents());
+		endLine();
+
+		item(DETAIL).append("Date: ");
+		appendDate(invoice.getTheDate());
+		endLine();
+
+		item(DETAIL).append("Paid: ");
+		if (invoice.getPaidDate() != null) {
+			appendDate(invoice.getPaidDate());
+		} else {
+			line.append("Outstanding");
+		}
+		endLine();
+	}
+
+	/**
+	 * Writes the invoices for one customer, in the order given.
+	 */
+	public void writeInvoicesForCustomer(String customerName,
+			Iterable<Invoice> invoices) throws IOException {
+		title(INVOICES_FOR_CUSTOMER_TITLE, customerName);
+		for (Invoice invoice : invoices) {
+			item(TOP).append("Invoice ").append(invoice.getNumber());
+			endLine();
+			invoiceDetails(invoice);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes invoices grouped by customer, from a materialized result such
+	 * as {@link Reporter#getInvoicesByCustomer}.
+	 */
+	public void writeInvoicesByCustomer(Map<Customer,
+			? extends Iterable<Invoice>> invoicesByCustomer) throws IOException {
+		writeInvoicesByCustomer(invoicesByCustomer.entrySet().iterator());
+	}
+
+	/**
+	 * Writes invoices grouped by customer, taking each customer and its
+	 * invoices as the given iterator reaches them, such as from
+	 * {@link Reporter#streamInvoicesByCustomer}.
+	 */
+	public void writeInvoicesByCustomer(Iterator<? extends Map.Entry<Customer,
+			? extends Iterable<Invoice>>> invoicesByCustomer) throws IOException {
+		title(INVOICES_BY_CUSTOMER_TITLE, "");
+		while (invoicesByCustomer.hasNext()) {
+			Map.Entry<Customer,? extends Iterable<Invoice>> entry =
+					invoicesByCustomer.next();
+			customerHeading(entry.getKey());
+			for (Invoice invoice : entry.getValue()) {
+				invoiceUnderCustomer(invoice);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes invoices grouped by customer, by walking the customers and
+	 * the invoices together. The invoices must be grouped by customer,
+	 * with the groups in the same order as the customers; customers with
+	 * no invoices are still listed.
+	 */
+	public void writeInvoicesByCustomer(Iterator<Customer> customers,
+			Iterator<Invoice> invoices) throws IOException {
+		title(INVOICES_BY_CUSTOMER_TITLE, "");
+		Invoice next = invoices.hasNext() ? invoices.next() : null;
+		while (customers.hasNext()) {
+			Customer customer = customers.next();
+			customerHeading(customer);
+			while (next != null && next.getCustomer().equals(customer)) {
+				invoiceUnderCustomer(next);
+				next = invoices.hasNext() ? invoices.next() : null;
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Helper to write a customer as a top-level item.
+	 */
+	private void customerHeading(Customer customer) throws IOException {
+		item(TOP).append("Customer: ").append(customer.getName());
+		endLine();
+	}
+
+	/**
+	 * Helper to write an invoice under its customer.
+	 */
+	private void invoiceUnderCustomer(Invoice invoice) throws IOException {
+		item(MIDDLE).append("Invoice ").append(invoice.getNumber());
+		endLine();
+		invoiceDetails(invoice);
+	}
+
+	/**
+	 * Writes overdue invoices, in the order given.
+	 */
+	public void writeOverdueInvoices(Iterable<Invoice> invoices)
+			throws IOException {
+		title(OVERDUE_INVOICES_TITLE, "");
+		for (Invoice invoice : invoices) {
+			item(TOP).append("Invoice ").append(invoice.getNumber());
+			endLine();
+			item(DETAIL).append("Customer: ")
+				.append(invoice.getCustomer().getName());
+			endLine();
+			invoiceDetails(invoice);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes customers and their volumes, in the order given. The function
+	 * finds the customer for each name, so we can show their terms.
+	 */
+	public void writeCustomersByVolume(Iterable<CustomerWithVolume> volumes,
+			Function<String,Customer> customers) throws IOException {
+		title(CUSTOMERS_BY_VOLUME_TITLE, "");
+		for (CustomerWithVolume volume : volumes) {
+			item(TOP).append("Customer: ").append(volume.getCustomerName());
+			endLine();
+			item(DETAIL).append("Terms: ")
+				.append(customers.apply(volume.getCustomerName()).getTerms());
+			endLine();
+			item(DETAIL).append("Volume: ").append(volume.getVolume());
+			endLine();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,45 @@
+package com.amica.billing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k least of the items it is given, in the given order,
+ * on a heap whose head is the greatest of those kept.
+ *
+ * @author Will Provost
+ */
+class TopK<T> {
+
+	private int k;
+	private Comparator<? super T> order;
+	private PriorityQueue<T> heap;
+
+	public TopK(int k, Comparator<? super T> order) {
+		this.k = k;
+		this.order = order;
+		this.heap = new PriorityQueue<>(Math.max(1, k), order.reversed());
+	}
+
+	public void add(T item) {
+		if (heap.size() < k) {
+			heap.add(item);
+		} else if (k != 0 && order.compare(item, heap.peek()) < 0) {
+			heap.poll();
+			heap.add(item);
+		}
+	}
+
+	public TopK<T> merge(TopK<T> other) {
+		other.heap.forEach(this::add);
+		return this;
+	}
+
+	public List<T> toList() {
+		List<T> result = new ArrayList<>(heap);
+		result.sort(order);
+		return result;
+	}
+}
@@ -2,16 +2,30 @@ package com.amica.billing;
 
 import static java.util.function.Function.identity;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import com.amica.acm.configuration.component.ComponentConfigurationsManager;
+import com.amica.billing.parse.DataFiles;
 import com.amica.billing.parse.Producer;
+import com.amica.billing.parse.QuarantineRejectSink;
+import com.amica.billing.parse.RejectSink;
 import com.amica.billing.parse.Parser.Format;
 import com.amica.escm.configuration.api.Configuration;
 
@@ -30,24 +44,67 @@ public class Updater {
 			Reporter.class.getPackage().getName() + ".customerFile";
 	public static final String INVOICE_FILE_PROPERTY =
 			Reporter.class.getPackage().getName() + ".invoiceFile";
+	public static final String QUARANTINE_FILE_PROPERTY =
+			Reporter.class.getPackage().getName() + ".quarantineFile";
+	public static final String OFF_HEAP_PROPERTY =
+			Reporter.class.getPackage().getName() + ".offHeap";
+	public static final String OFF_HEAP_DIRECTORY_PROPERTY =
+			Reporter.class.getPackage().getName() + ".offHeapDirectory";
 
 	private String customersFilename;
 	private String invoicesFilename;
-	private Producer parser;
+	private String quarantineFilename;
+	private Producer customerParser;
+	private Producer invoiceParser;
+	private Function<String,Producer> shardParsers;
+	private int shardThreads = InvoiceShards.DEFAULT_THREADS;
+	
+	private Supplier<InvoiceStore> invoiceMaps = InvoiceMap::new;
 	
 	private Map<String,Customer> customers;
-	private Map<Integer,Invoice> invoices;
+	private InvoiceStore invoices;
 	private int nextInvoiceNumber;
+	
+	private List<String> shards = Collections.emptyList();
+	private Map<Integer,String> shardsByInvoice = new TreeMap<>();
+	private Map<String,List<Invoice>> duplicatesByShard = Collections.emptyMap();
+	private Set<String> dirtyShards = new LinkedHashSet<>();
 
 	/**
 	 * Customer and invoice data is found in files whose names are provided
-	 * using the configuration manager.
+	 * using the configuration manager. Unless a parser class is configured,
+	 * each file's format is detected from its content. If so configured,
+	 * invoices are kept {@link OffHeapInvoices off the heap}, in direct
+	 * buffers or, if a directory is given, in a file mapped into memory.
 	 */
 	public Updater(Configuration configuration) {
 		
 		customersFilename = configuration.getString(CUSTOMER_FILE_PROPERTY);
 		invoicesFilename = configuration.getString(INVOICE_FILE_PROPERTY);
-		parser = ParserFactory.createParser(configuration, Format.DEFAULT);
+		if (configuration.containsKey(QUARANTINE_FILE_PROPERTY)) {
+			quarantineFilename = 
+					configuration.getString(QUARANTINE_FILE_PROPERTY);
+		}
+		if (configuration.containsKey(InvoiceShards.SHARD_THREADS_PROPERTY)) {
+			shardThreads = Integer.parseInt(configuration.getString
+					(InvoiceShards.SHARD_THREADS_PROPERTY));
+		}
+		if (configuration.containsKey(OFF_HEAP_DIRECTORY_PROPERTY)) {
+			Path directory = Paths.get
+					(configuration.getString(OFF_HEAP_DIRECTORY_PROPERTY));
+			invoiceMaps = () -> new OffHeapInvoices
+					(OffHeapInvoices.DEFAULT_CHUNK_RECORDS, directory);
+		} else if (configuration.containsKey(OFF_HEAP_PROPERTY) && 
+				Boolean.parseBoolean(configuration.getString(OFF_HEAP_PROPERTY))) {
+			invoiceMaps = OffHeapInvoices::new;
+		}
+		customerParser = 
+				ParserFactory.createParser(configuration, customersFilename);
+		shardParsers = 
+				filename -> ParserFactory.createParser(configuration, filename);
+		if (!InvoiceShards.isSharded(invoicesFilename)) {
+			invoiceParser = shardParsers.apply(invoicesFilename);
+		}
 		load();
 	}
 	
@@ -67,33 +124,63 @@ public class Updater {
 			Format format) {
 		this.customersFilename = customersFilename;
 		this.invoicesFilename = invoicesFilename;
-		this.parser = ParserFactory.createParser(format);
+		this.customerParser = ParserFactory.createParser(format);
+		this.invoiceParser = customerParser;
+		this.shardParsers = filename -> ParserFactory.createParser(format);
 		load();
 	}
 	
 	/**
-	 * Customer and invoice data is found in files of the given names.
+	 * Customer and invoice data is found in files of the given names,
+	 * and each file's format is detected from its content, falling back to
+	 * the file extension and then to {@link Format#DEFAULT}. This used to
+	 * assume the default format; pass that format to the other constructor
+	 * to keep that behavior.
 	 */	
 	public Updater(String customersFilename, String invoicesFilename) {
-		this(customersFilename, invoicesFilename, Format.DEFAULT);
+		this.customersFilename = customersFilename;
+		this.invoicesFilename = invoicesFilename;
+		this.customerParser = ParserFactory.createParser(customersFilename);
+		this.shardParsers = ParserFactory::createParser;
+		if (!InvoiceShards.isSharded(invoicesFilename)) {
+			this.invoiceParser = shardParsers.apply(invoicesFilename);
+		}
+		load();
 	}
 	
 	/**
 	 * Load data from files using the configured parser.
+	 * Compressed files are decompressed as we read them.
+	 * If a quarantine file is configured, rejected records are written to it.
+	 * If the invoice filename is a directory or glob pattern, we load all of
+	 * the {@link InvoiceShards shards} it names, and remember which shard 
+	 * each invoice came from so that {@link #save save} can write back
+	 * only the shards that changed.
 	 */
 	public void load() {
 		try (
-			FileReader customerReader = new FileReader(customersFilename);
-			FileReader invoiceReader = new FileReader(invoicesFilename);
+			Reader customerReader = DataFiles.openReader(customersFilename);
+			RejectSink rejectSink = quarantineFilename != null
+				? new QuarantineRejectSink(quarantineFilename) : null;
 		) {
-			customers = parser.parseCustomers(new FileReader(customersFilename))
-					.collect(Collectors.toMap(Customer::getName, identity()));
-			invoices = parser.parseInvoices
-				(new FileReader(invoicesFilename), customers)
-					.collect(Collectors.toMap(Invoice::getNumber, identity(), 
-							(x,y) -> x, TreeMap::new));
-			nextInvoiceNumber = invoices.keySet().stream()
-					.mapToInt(Integer::intValue).max().orElse(0) + 1;
+			if (rejectSink != null) {
+				customerParser.setRejectSink(rejectSink);
+			}
+			if (invoiceParser == null) {
+				customers = customerParser.parseCustomers(customerReader)
+						.collect(Collectors.toMap(Customer::getName, identity()));
+				customerParser.flushRejects();
+				loadShards(rejectSink);
+			} else {
+				if (rejectSink != null) {
+					invoiceParser.setRejectSink(rejectSink);
+				}
+				try ( Reader invoiceReader = 
+						DataFiles.openReader(invoicesFilename); ) {
+					loadInvoices(customerReader, invoiceReader);
+				}
+			}
+			nextInvoiceNumber = invoices.getMaxNumber() + 1;
 		} catch (Exception ex) {
 			log.log(Level.SEVERE, String.format("%s=%s", 
 					CUSTOMER_FILE_PROPERTY, customersFilename));
@@ -104,22 +191,131 @@ public class Updater {
 	}
 	
 	/**
-	 * Save data to files using the configured producer.
+	 * Helper to load customers and invoices from single files. As in the
+	 * {@link Reporter}, if the invoice parser supports deferred customers,
+	 * the two files are parsed at the same time. Each parser's reject sink
+	 * is flushed once we're done with it.
+	 */
+	private void loadInvoices(Reader customerReader, Reader invoiceReader) {
+		if (invoiceParser.supportsDeferredCustomers()) {
+			CompletableFuture<Map<String,Customer>> futureCustomers =
+				CompletableFuture.supplyAsync(() -> customerParser
+					.parseCustomers(customerReader).collect
+						(Collectors.toMap(Customer::getName, identity())));
+			List<Invoice> unresolved = invoiceParser
+					.parseInvoices(invoiceReader)
+					.collect(Collectors.toList());
+			customers = futureCustomers.join();
+			invoices = invoiceParser.resolveInvoices
+					(unresolved.stream(), customers)
+				.collect(Collectors.toMap(Invoice::getNumber, 
+					identity(), (x,y) -> x, this::emptyStore));
+		} else {
+			customers = customerParser.parseCustomers(customerReader)
+					.collect(Collectors.toMap(Customer::getName, identity()));
+			invoices = invoiceParser.parseInvoices(invoiceReader, customers)
+					.collect(Collectors.toMap(Invoice::getNumber, 
+						identity(), (x,y) -> x, this::emptyStore));
+		}
+		customerParser.flushRejects();
+		if (invoiceParser != customerParser) {
+			invoiceParser.flushRejects();
+		}
+	}
+	
+	/**
+	 * Helper to get our invoice store, emptied for a fresh load. We make
+	 * one store and reuse it, so that reloading doesn't leave an off-heap
+	 * store's buffers and scratch file behind.
+	 */
+	private InvoiceStore emptyStore() {
+		if (invoices == null) {
+			invoices = invoiceMaps.get();
+		} else {
+			invoices.clear();
+		}
+		return invoices;
+	}
+	
+	/**
+	 * Helper to load invoices from a set of shards.
+	 */
+	private void loadShards(RejectSink rejectSink) throws Exception {
+		InvoiceShards.Result result = new InvoiceShards(filename -> {
+				Producer parser = shardParsers.apply(filename);
+				if (rejectSink != null) {
+					parser.setRejectSink(rejectSink);
+				}
+				return parser;
+			}, shardThreads).load(invoicesFilename, customers);
+		
+		emptyStore().putAll(result.getInvoices());
+		shards = result.getShards();
+		shardsByInvoice = new TreeMap<>(result.getShardsByInvoice());
+		duplicatesByShard = result.getDuplicatesByShard();
+		dirtyShards.clear();
+	}
+	
+	/**
+	 * Save data to files using the configured producer. A file whose name
+	 * ends in a compression extension such as ".gz" is written compressed.
+	 * When invoices were loaded from shards, we write only those shards 
+	 * that hold new or updated invoices.
 	 */
 	public void save() {
 		
-		try ( 
-			FileWriter customerWriter = new FileWriter(customersFilename);
-			FileWriter invoiceWriter = new FileWriter(invoicesFilename);
-		) {
-			parser.produceCustomers(customers.values().stream(), 
+		try ( Writer customerWriter = DataFiles.openWriter(customersFilename); ) {
+			customerParser.produceCustomers(customers.values().stream(), 
 					customerWriter);
-			parser.produceInvoices(invoices.values().stream(), 
-					invoiceWriter);
+			if (invoiceParser != null) {
+				try ( Writer invoiceWriter = 
+						DataFiles.openWriter(invoicesFilename); ) {
+					invoiceParser.produceInvoices(invoices.values().stream(), 
+							invoiceWriter);
+				}
+			} else {
+				saveShards();
+			}
 		} catch (Exception ex) {
 			log.log(Level.SEVERE, "Couldn't save data.", ex);
 		}
 	}
+	
+	/**
+	 * Helper to write back the shards that have changed since loading.
+	 * Invoices that a shard held as duplicates of ones in earlier shards
+	 * are written back to it as they were loaded.
+	 */
+	private void saveShards() throws Exception {
+		Map<String,List<Invoice>> invoicesByShard = new LinkedHashMap<>();
+		for (String shard : dirtyShards) {
+			invoicesByShard.put(shard, new ArrayList<>());
+		}
+		for (Invoice invoice : invoices.values()) {
+			List<Invoice> shardInvoices = invoicesByShard.get
+					(shardsByInvoice.get(invoice.getNumber()));
+			if (shardInvoices != null) {
+				shardInvoices.add(invoice);
+			}
+		}
+		for (Map.Entry<String,List<Invoice>> entry : 
+				invoicesByShard.entrySet()) {
+			List<Invoice> duplicates = duplicatesByShard.get(entry.getKey());
+			if (duplicates != null) {
+				entry.getValue().addAll(duplicates);
+				entry.getValue().sort(Reporter.BY_NUMBER);
+			}
+		}
+		
+		for (Map.Entry<String,List<Invoice>> entry : 
+				invoicesByShard.entrySet()) {
+			Producer producer = shardParsers.apply(entry.getKey());
+			try ( Writer writer = DataFiles.openWriter(entry.getKey()); ) {
+				producer.produceInvoices(entry.getValue().stream(), writer);
+			}
+		}
+		dirtyShards.clear();
+	}
 
 	/**
 	 * Create a customer with the given data and add it to the set.
@@ -138,13 +334,23 @@ public class Updater {
 	/**
 	 * Create an invoice with the given data and add it to the set.
 	 * Invoice number is generated; invoice date is assumed to be today.
+	 * If invoices are sharded, the new invoice goes in the last shard.
 	 */
 	public void createInvoice(String customerName, double amount) {
 		
 		if (customers.containsKey(customerName)) {
+			if (invoiceParser == null && shards.isEmpty()) {
+				throw new IllegalStateException
+					("There is no invoice shard to hold a new invoice.");
+			}
 			Invoice invoice = new Invoice(nextInvoiceNumber++, 
 					customers.get(customerName), amount, LocalDate.now(), null);
 			invoices.put(invoice.getNumber(), invoice);
+			if (invoiceParser == null) {
+				String shard = shards.get(shards.size() - 1);
+				shardsByInvoice.put(invoice.getNumber(), shard);
+				dirtyShards.add(shard);
+			}
 		} else {
 			throw new IllegalArgumentException("No such customer: " + customerName);
 		}
@@ -159,6 +365,10 @@ public class Updater {
 			Invoice invoice = invoices.get(invoiceNumber);
 			if (invoice.getPaidDate() == null) {
 				invoice.setPaidDate(LocalDate.now());
+				invoices.put(invoiceNumber, invoice); // in case it holds copies
+				if (invoiceParser == null) {
+					dirtyShards.add(shardsByInvoice.get(invoiceNumber));
+				}
 			} else {
 				throw new IllegalStateException("Invoice " + invoiceNumber + 
 						" has already been paid.");
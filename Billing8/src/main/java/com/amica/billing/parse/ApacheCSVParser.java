@@ -3,7 +3,6 @@ package com.amica.billing.parse;
 import java.io.Reader;
 import java.io.Writer;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.stream.Stream;
@@ -16,8 +15,13 @@ import org.apache.commons.csv.QuoteMode;
 
 import com.amica.billing.Customer;
 import com.amica.billing.Invoice;
+import com.amica.billing.Money;
 import com.amica.billing.Terms;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
 
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.java.Log;
 
@@ -42,9 +46,23 @@ public class ApacheCSVParser implements Producer {
 	private static final int INVOICE_DATE_COLUMN = 4;
 	private static final int INVOICE_PAID_DATE_COLUMN = 5;
 
+	private static final CSVFormat EXPORT_FORMAT = CSVFormat.DEFAULT
+			.withQuoteMode(QuoteMode.NON_NUMERIC)
+			.withNullString("NULL")
+			.withRecordSeparator("\n")
+			.withFirstRecordAsHeader();
+	
+	private static final CSVFormat EXCEL_FORMAT = CSVFormat.EXCEL
+			.withNullString("")
+			.withRecordSeparator("\n");
+	
 	private CSVFormat format;
 	private boolean writeHeaders;
 	
+	@Getter
+	@Setter
+	private RejectSink rejectSink = new LoggingRejectSink(log);
+	
 	public ApacheCSVParser(boolean writeHeaders) {
 		this(CSVFormat.DEFAULT, writeHeaders);
 	}
@@ -55,79 +73,94 @@ public class ApacheCSVParser implements Producer {
 	}
 	
 	public static ApacheCSVParser createExportParser() {
-		return new ApacheCSVParser(CSVFormat.DEFAULT
-				.withQuoteMode(QuoteMode.NON_NUMERIC)
-				.withNullString("NULL")
-				.withRecordSeparator("\n")
-				.withFirstRecordAsHeader(), true);
+		return new ApacheCSVParser(EXPORT_FORMAT, true);
 	}
 	
 	public static ApacheCSVParser createExcelParser() {
-		return new ApacheCSVParser(CSVFormat.EXCEL
-				.withNullString("")
-				.withRecordSeparator("\n"), false);
+		return new ApacheCSVParser(EXCEL_FORMAT, false);
 	}
 	
 	public CSVFormat getCSVFormat() {
 		return format;
 	}
 	
+	/**
+	 * Helper to read through a reader that keeps the raw text of each
+	 * record, for rejects.
+	 */
+	private RawRecordReader rawReader(Reader reader) {
+		return new RawRecordReader(reader, format.getQuoteCharacter());
+	}
+	
 	/**
 	 * Helper that can parse one line of comma-separated text in order to
 	 * produce a {@link Customer} object.
 	 */
-	private Customer parseCustomer(CSVRecord record) {
+	private Customer parseCustomer(CSVRecord record, RawRecordReader raw) {
+		long position = record.getCharacterPosition();
+		raw.startRecord(position);
 		if (record.size() == CUSTOMER_COLUMNS) {
 			try {
 				return new Customer(record.get(CUSTOMER_FIRST_NAME_COLUMN), 
 						record.get(CUSTOMER_LAST_NAME_COLUMN), 
 						Terms.valueOf(record.get(CUSTOMER_TERMS_COLUMN)));
 			} catch (Exception ex) {
-				log.warning(() -> 
-					"Couldn't parse terms value, skipping customer: "+ record);
+				rejectSink.reject(RecordType.CUSTOMER, Reason.TERMS, 
+						raw.getRecord(position));
 			}
 		} else {
-			log.warning(() -> 
-				"Incorrect number of fields, skipping customer: " + record);
+			rejectSink.reject(RecordType.CUSTOMER, Reason.FIELD_COUNT, 
+					raw.getRecord(position));
 		}
 
 		return null;
 	}
 
 	/**
-	 * Helper that can parse one line of comma-separated text in order to
-	 * produce an {@link Invoice} object.
+	 * Helper that can parse one record in order to produce an 
+	 * {@link Invoice} object, or null if the record is rejected or
+	 * doesn't pass the given filter. We check the paid and issue dates
+	 * against the filter before parsing anything else.
 	 */
-	private Invoice parseInvoice(CSVRecord record, Map<String, Customer> customers) {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	private Invoice parseInvoice(CSVRecord record, RawRecordReader raw,
+			CustomerIndex customers, InvoiceFilter filter) {
+		long position = record.getCharacterPosition();
+		raw.startRecord(position);
 		if (record.size() >= INVOICE_MIN_COLUMNS) {
 			try {
+				String paid = record.get(INVOICE_PAID_DATE_COLUMN);
+				if (!filter.acceptsPaid(paid != null)) {
+					return null;
+				}
+				LocalDate date = DateCodec.parseISO(record.get(INVOICE_DATE_COLUMN));
+				if (!filter.acceptsIssued(date)) {
+					return null;
+				}
+				
 				int number = Integer.parseInt(record.get(INVOICE_NUMBER_COLUMN));
 				String first = record.get(INVOICE_FIRST_NAME_COLUMN);
 				String last = record.get(INVOICE_LAST_NAME_COLUMN);
-				double amount = Double.parseDouble
-						(record.get(INVOICE_AMOUNT_COLUMN));
-				
-				LocalDate date = LocalDate.parse(record.get(INVOICE_DATE_COLUMN), parser);
-				LocalDate paidDate = record.get(INVOICE_PAID_DATE_COLUMN) != null
-						? LocalDate.parse(record.get(INVOICE_PAID_DATE_COLUMN), parser) 
-						: null;
+				long cents = Money.parseCents(record.get(INVOICE_AMOUNT_COLUMN));
+				LocalDate paidDate = paid != null ? DateCodec.parseISO(paid) : null;
 
-				Customer customer = customers.get(first + " " + last);
+				Customer customer = customers.get(first, last);
 				if (customer != null) {
-					return new Invoice(number, customer, amount, date, paidDate);
+					if (!filter.acceptsCustomer(customer)) {
+						return null;
+					}
+					return Invoice.ofCents
+							(number, customer, cents, date, paidDate);
 				} else {
-					log.warning(() -> 
-						"Unknown customer, skipping invoice: " + record);
+					rejectSink.reject(RecordType.INVOICE, 
+							Reason.UNKNOWN_CUSTOMER, raw.getRecord(position));
 				}
 			} catch (Exception ex) {
-				ex.printStackTrace();
-				log.warning(() -> 
-					"Couldn't parse values, skipping invoice: " + record);
+				rejectSink.reject(RecordType.INVOICE, Reason.VALUES, 
+						raw.getRecord(position));
 			}
 		} else {
-			log.warning(() -> 
-				"Incorrect number of fields, skipping invoice: " + record);
+			rejectSink.reject(RecordType.INVOICE, Reason.FIELD_COUNT, 
+					raw.getRecord(position));
 		}
 
 		return null;
@@ -169,9 +202,10 @@ public class ApacheCSVParser implements Producer {
 	 */
 	public Stream<Customer> parseCustomers(Reader customerReader) {
 		try {
+			RawRecordReader raw = rawReader(customerReader);
 			return StreamSupport.stream
-				(format.parse(customerReader).spliterator(), false)
-					.map(this::parseCustomer);
+				(format.parse(raw).spliterator(), false)
+					.map(record -> parseCustomer(record, raw));
 		} catch (Exception ex) {
 			log.log(Level.SEVERE, "Couldn't parse customers file.", ex);
 		}
@@ -189,10 +223,23 @@ public class ApacheCSVParser implements Producer {
 	 */
 	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
 			Map<String, Customer> customers) {
+		return parseInvoices(invoiceReader, customers, InvoiceFilter.ALL);
+	}
+
+	/**
+	 * Consumes the given string streams and translates to {@link Invoices}
+	 * objects, skipping records that don't pass the given filter.
+	 */
+	@Override
+	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
+			Map<String, Customer> customers, InvoiceFilter filter) {
 		try {
+			CustomerIndex index = CustomerIndex.of(customers);
+			RawRecordReader raw = rawReader(invoiceReader);
 			return StreamSupport.stream
-				(format.parse(invoiceReader).spliterator(), false)
-					.map(record -> parseInvoice(record, customers));
+				(format.parse(raw).spliterator(), false)
+					.map(record -> parseInvoice(record, raw, index, filter))
+					.filter(invoice -> invoice != null);
 		} catch (Exception ex) {
 			log.log(Level.SEVERE, "Couldn't parse customers file.", ex);
 		}
@@ -230,4 +277,13 @@ public class ApacheCSVParser implements Producer {
 				.forEach(values -> sneakyPrint(printer, values));
 		
 	}
+
+	/**
+	 * Each invoice record names its customer, so we can parse invoices
+	 * ahead of the customers.
+	 */
+	@Override
+	public boolean supportsDeferredCustomers() {
+		return true;
+	}
 }
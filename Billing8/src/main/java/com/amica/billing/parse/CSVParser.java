@@ -5,14 +5,20 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import com.amica.billing.Customer;
 import com.amica.billing.Invoice;
+import com.amica.billing.Money;
 import com.amica.billing.Terms;
+import com.amica.billing.parse.InvoiceColumns.Column;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
 
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.java.Log;
 
 /**
@@ -36,6 +42,10 @@ public class CSVParser implements Producer {
 	private static final int INVOICE_DATE_COLUMN = 4;
 	private static final int INVOICE_PAID_DATE_COLUMN = 5;
 
+	@Getter
+	@Setter
+	private RejectSink rejectSink = new LoggingRejectSink(log);
+
 	/**
 	 * Helper that can parse one line of comma-separated text in order to
 	 * produce a {@link Customer} object.
@@ -51,12 +61,10 @@ public class CSVParser implements Producer {
 				return new Customer(fields[CUSTOMER_FIRST_NAME_COLUMN], 
 						fields[CUSTOMER_LAST_NAME_COLUMN], terms);
 			} catch (Exception ex) {
-				log.warning(() -> 
-					"Couldn't parse terms value, skipping customer: "+ line);
+				rejectSink.reject(RecordType.CUSTOMER, Reason.TERMS, line);
 			}
 		} else {
-			log.warning(() -> 
-				"Incorrect number of fields, skipping customer: " + line);
+			rejectSink.reject(RecordType.CUSTOMER, Reason.FIELD_COUNT, line);
 		}
 
 		return null;
@@ -64,44 +72,134 @@ public class CSVParser implements Producer {
 
 	/**
 	 * Helper that can parse one line of comma-separated text in order to
-	 * produce an {@link Invoice} object.
+	 * produce an {@link Invoice} object. Returns null if the line is 
+	 * rejected, or if it doesn't pass the given filter; whether the invoice
+	 * is paid and when it was issued are checked before the other fields
+	 * are parsed.
 	 */
-	private Invoice parseInvoice(String line, Map<String, Customer> customers) {
-		DateTimeFormatter parser = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	private Invoice parseInvoice(String line, CustomerIndex customers,
+			InvoiceFilter filter) {
 		String[] fields = line.split(",");
 		if (fields.length >= INVOICE_MIN_COLUMNS) {
 			try {
+				if (!filter.acceptsPaid(fields.length > INVOICE_PAID_DATE_COLUMN)) {
+					return null;
+				}
+				LocalDate date = DateCodec.parseISO(fields[INVOICE_DATE_COLUMN]);
+				if (!filter.acceptsIssued(date)) {
+					return null;
+				}
+				
 				int number = Integer.parseInt(fields[INVOICE_NUMBER_COLUMN]);
 				String first = fields[INVOICE_FIRST_NAME_COLUMN];
 				String last = fields[INVOICE_LAST_NAME_COLUMN];
-				double amount = Double.parseDouble
-						(fields[INVOICE_AMOUNT_COLUMN]);
-				
-				LocalDate date = LocalDate.parse(fields[INVOICE_DATE_COLUMN], parser);
+				long cents = Money.parseCents(fields[INVOICE_AMOUNT_COLUMN]);
 				LocalDate paidDate = fields.length > INVOICE_PAID_DATE_COLUMN 
-						? LocalDate.parse(fields[INVOICE_PAID_DATE_COLUMN], parser) 
+						? DateCodec.parseISO(fields[INVOICE_PAID_DATE_COLUMN]) 
 						: null;
 
-				Customer customer = customers.get(first + " " + last);
+				Customer customer = customers.get(first, last);
 				if (customer != null) {
-					return new Invoice(number, customer, amount, date, paidDate);
+					return filter.acceptsCustomer(customer)
+						? Invoice.ofCents(number, customer, cents, date, paidDate)
+						: null;
 				} else {
-					log.warning(() -> 
-						"Unknown customer, skipping invoice: " + line);
+					rejectSink.reject(RecordType.INVOICE, 
+							Reason.UNKNOWN_CUSTOMER, line);
 				}
 			} catch (Exception ex) {
-				ex.printStackTrace();
-				log.warning(() -> 
-					"Couldn't parse values, skipping invoice: " + line);
+				rejectSink.reject(RecordType.INVOICE, Reason.VALUES, line);
 			}
 		} else {
-			log.warning(() -> 
-				"Incorrect number of fields, skipping invoice: " + line);
+			rejectSink.reject(RecordType.INVOICE, Reason.FIELD_COUNT, line);
 		}
 
 		return null;
 	}
 
+	/**
+	 * Helper to find where the fields of a line start and end, without
+	 * splitting it; we look no further than the number of fields we have
+	 * room for. Returns the number of fields found, not counting empty
+	 * fields at the end, as {@link String#split} wouldn't.
+	 */
+	private static int findFields(String line, int[] starts, int[] ends) {
+		int count = 0;
+		int start = 0;
+		while (count < starts.length) {
+			int comma = line.indexOf(',', start);
+			starts[count] = start;
+			ends[count] = comma >= 0 ? comma : line.length();
+			++count;
+			if (comma < 0) {
+				break;
+			}
+			start = comma + 1;
+		}
+		while (count > 0 && starts[count - 1] == ends[count - 1]) {
+			--count;
+		}
+		return count;
+	}
+
+	/**
+	 * Helper that decodes the projected columns of one line into the given
+	 * columns, along with whatever fields the filter needs. Fields we don't
+	 * need are found but never decoded or checked.
+	 */
+	private void parseInvoiceColumns(String line, CustomerIndex customers,
+			InvoiceFilter filter, InvoiceColumns out, int[] starts, int[] ends) {
+		int count = findFields(line, starts, ends);
+		if (count < INVOICE_MIN_COLUMNS) {
+			rejectSink.reject(RecordType.INVOICE, Reason.FIELD_COUNT, line);
+			return;
+		}
+		try {
+			boolean paid = count > INVOICE_PAID_DATE_COLUMN;
+			if (!filter.acceptsPaid(paid)) {
+				return;
+			}
+			LocalDate date = null;
+			if (out.has(Column.DATE) || filter.hasDateRange()) {
+				date = DateCodec.parseISO(line, starts[INVOICE_DATE_COLUMN], 
+						ends[INVOICE_DATE_COLUMN]);
+				if (!filter.acceptsIssued(date)) {
+					return;
+				}
+			}
+			Customer customer = null;
+			if (out.has(Column.CUSTOMER) || filter.hasCustomers()) {
+				customer = customers.get(line, 
+					starts[INVOICE_FIRST_NAME_COLUMN], ends[INVOICE_FIRST_NAME_COLUMN],
+					starts[INVOICE_LAST_NAME_COLUMN], ends[INVOICE_LAST_NAME_COLUMN]);
+				if (customer == null) {
+					rejectSink.reject(RecordType.INVOICE, 
+							Reason.UNKNOWN_CUSTOMER, line);
+					return;
+				}
+				if (!filter.acceptsCustomer(customer)) {
+					return;
+				}
+			}
+			
+			int number = out.has(Column.NUMBER) 
+				? Fields.parseInt(line, starts[INVOICE_NUMBER_COLUMN], 
+					ends[INVOICE_NUMBER_COLUMN]) 
+				: 0;
+			long cents = out.has(Column.AMOUNT) 
+				? Money.parseCents(line, starts[INVOICE_AMOUNT_COLUMN], 
+					ends[INVOICE_AMOUNT_COLUMN]) 
+				: 0;
+			LocalDate paidDate = out.has(Column.PAID_DATE) && paid
+				? DateCodec.parseISO(line, starts[INVOICE_PAID_DATE_COLUMN], 
+					ends[INVOICE_PAID_DATE_COLUMN]) 
+				: null;
+			out.add(number, customer, cents, date, paidDate);
+		} catch (Exception ex) {
+			rejectSink.reject(RecordType.INVOICE, Reason.VALUES, line);
+		}
+	}
+
 	/**
 	 * Helper to write a CSV representation of one customer.
 	 */
@@ -115,12 +213,17 @@ public class CSVParser implements Producer {
 	 * Helper to write a CSV representation of one invoice.
 	 */
 	public String formatInvoice(Invoice invoice) {
+		StringBuilder line = new StringBuilder(64)
+				.append(invoice.getNumber()).append(',')
+				.append(invoice.getCustomer().getFirstName()).append(',')
+				.append(invoice.getCustomer().getLastName()).append(',');
+		Money.append(line, invoice.getCents()).append(',');
+		DateCodec.appendISO(line, invoice.getTheDate());
 		LocalDate paid = invoice.getPaidDate();
-		return String.format("%d,%s,%s,%.2f,%s%s\n", invoice.getNumber(),
-				invoice.getCustomer().getFirstName(), 
-				invoice.getCustomer().getLastName(),
-				invoice.getAmount(), invoice.getTheDate().toString(),
-				paid != null ? ("," + paid.toString()) : "");
+		if (paid != null) {
+			DateCodec.appendISO(line.append(','), paid);
+		}
+		return line.append('\n').toString();
 	}
 
 	/**
@@ -145,12 +248,41 @@ public class CSVParser implements Producer {
 	 */
 	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
 			Map<String, Customer> customers) {
+		return parseInvoices(invoiceReader, customers, InvoiceFilter.ALL);
+	}
+
+	/**
+	 * Consumes the given string streams and translates to {@link Invoices}
+	 * objects, skipping lines that don't pass the given filter.
+	 */
+	@Override
+	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
+			Map<String, Customer> customers, InvoiceFilter filter) {
 
+		CustomerIndex index = CustomerIndex.of(customers);
 		return new BufferedReader(invoiceReader).lines()
-				.map(line -> parseInvoice(line, customers))
+				.map(line -> parseInvoice(line, index, filter))
 				.filter(invoice -> invoice != null);
 	}
 
+	/**
+	 * Consumes the given string stream, decoding only the given columns
+	 * of the lines that pass the given filter.
+	 */
+	@Override
+	public InvoiceColumns parseInvoiceColumns(Reader invoiceReader,
+			Map<String, Customer> customers, Set<Column> columns, 
+			InvoiceFilter filter) {
+		
+		CustomerIndex index = CustomerIndex.of(customers);
+		InvoiceColumns result = new InvoiceColumns(columns);
+		int[] starts = new int[INVOICE_PAID_DATE_COLUMN + 1];
+		int[] ends = new int[starts.length];
+		new BufferedReader(invoiceReader).lines().forEach(line -> 
+			parseInvoiceColumns(line, index, filter, result, starts, ends));
+		return result;
+	}
+
 	/**
 	 * Maps each customer to a string representation and writes it.
 	 */
@@ -177,4 +309,13 @@ public class CSVParser implements Producer {
 		});
 		
 	}
+
+	/**
+	 * Invoice lines name their customers, so they can be parsed
+	 * before the customers are loaded.
+	 */
+	@Override
+	public boolean supportsDeferredCustomers() {
+		return true;
+	}
 }
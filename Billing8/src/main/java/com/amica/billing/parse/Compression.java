@@ -0,0 +1,275 @@
+package com.amica.billing.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compression codecs that we can recognize at the start of a file,
+ * by their "magic" leading bytes, or by file extension. The codecs that
+ * the JDK supports can also wrap streams to decompress or compress.
+ * 
+ * @author Will Provost
+ */
+public enum Compression {
+	NONE(new String[] {}),
+	GZIP(new String[] { ".gz", ".gzip" }, 0x1f, 0x8b),
+	ZIP(new String[] { ".zip" }, 0x50, 0x4b, 0x03, 0x04),
+	DEFLATE(new String[] { ".zz", ".deflate" }, 0x78),
+	BZIP2(new String[] { ".bz2" }, 0x42, 0x5a, 0x68),
+	XZ(new String[] { ".xz" }, 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00);
+	
+	public static final int MAGIC_LENGTH = 7;
+	public static final int DEFLATE_CHECK_LENGTH = 1024;
+	
+	private static final int FDICT = 0x20;
+	private static final int[] BZIP2_BLOCK = { 0x31, 0x41, 0x59 };
+	private static final int[] BZIP2_END = { 0x17, 0x72, 0x45 };
+	
+	private String[] extensions;
+	private int[] magic;
+	
+	private Compression(String[] extensions, int... magic) {
+		this.extensions = extensions;
+		this.magic = magic;
+	}
+	
+	/**
+	 * Returns true if the JDK can decompress and compress this format.
+	 */
+	public boolean isSupported() {
+		return this != BZIP2 && this != XZ;
+	}
+	
+	/**
+	 * Checks the given leading bytes of a file for this codec's signature.
+	 * A zlib header is a single 0x78 byte plus a second byte that makes
+	 * the pair a multiple of 31, so we check that as well, and we pass
+	 * over headers that call for a preset dictionary, which we can't
+	 * supply. Plain text can still look like this, so 
+	 * {@link #detect(InputStream)} goes on to try inflating it.
+	 * Text can also start with "BZh", so for BZIP2 we also want a block
+	 * size digit and the start of the first block's magic number, or of
+	 * the end-of-stream magic number for an empty stream.
+	 */
+	public boolean matches(byte[] head, int length) {
+		if (magic.length == 0 || length < Math.max(magic.length, 2)) {
+			return false;
+		}
+		if (!matchesAt(head, 0, magic)) {
+			return false;
+		}
+		
+		if (this == BZIP2) {
+			return length >= MAGIC_LENGTH && head[3] >= '1' && head[3] <= '9' &&
+				(matchesAt(head, 4, BZIP2_BLOCK) || matchesAt(head, 4, BZIP2_END));
+		}
+		return this != DEFLATE || ((head[1] & FDICT) == 0 &&
+				(((head[0] & 0xff) << 8) | (head[1] & 0xff)) % 31 == 0);
+	}
+	
+	/**
+	 * Helper to compare the given bytes, starting at the given offset,
+	 * with the given signature.
+	 */
+	private static boolean matchesAt(byte[] head, int offset, int[] signature) {
+		for (int i = 0; i < signature.length; ++i) {
+			if ((head[offset + i] & 0xff) != signature[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the codec whose signature matches the given leading bytes,
+	 * or NONE.
+	 */
+	public static Compression detect(byte[] head, int length) {
+		for (Compression compression : values()) {
+			if (compression.matches(head, length)) {
+				return compression;
+			}
+		}
+		
+		return NONE;
+	}
+	
+	/**
+	 * Peeks at the start of the given stream, which must support 
+	 * mark/reset, and returns the codec whose signature is found there,
+	 * or NONE. The DEFLATE signature is only two bytes, so we believe it
+	 * only if the first {@value #DEFLATE_CHECK_LENGTH} bytes inflate 
+	 * without error. The stream is reset to where it was.
+	 */
+	public static Compression detect(InputStream in) throws IOException {
+		byte[] head = new byte[DEFLATE_CHECK_LENGTH];
+		in.mark(head.length);
+		try {
+			int length = readFully(in, head, 0, MAGIC_LENGTH);
+			Compression compression = detect(head, length);
+			if (compression == DEFLATE && !inflates(head, length + 
+					readFully(in, head, length, head.length - length))) {
+				compression = NONE;
+			}
+			return compression;
+		} finally {
+			in.reset();
+		}
+	}
+	
+	/**
+	 * Helper to read up to the given number of bytes into the given buffer,
+	 * at the given offset; returns the number of bytes read.
+	 */
+	private static int readFully(InputStream in, byte[] buffer, 
+			int offset, int count) throws IOException {
+		int length = 0;
+		int read;
+		while (length < count && (read = in.read
+				(buffer, offset + length, count - length)) != -1) {
+			length += read;
+		}
+		return length;
+	}
+	
+	/**
+	 * Helper to see if the given bytes inflate without error.
+	 */
+	private static boolean inflates(byte[] bytes, int length) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, 0, length);
+			byte[] out = new byte[DEFLATE_CHECK_LENGTH];
+			while (!inflater.finished() && !inflater.needsInput()) {
+				if (inflater.inflate(out) == 0 && inflater.needsDictionary()) {
+					return false;
+				}
+			}
+			return true;
+		} catch (DataFormatException ex) {
+			return false;
+		} finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Returns the codec indicated by the filename's extension, or NONE.
+	 */
+	public static Compression forFilename(String filename) {
+		String lowerCase = filename.toLowerCase();
+		for (Compression compression : values()) {
+			for (String extension : compression.extensions) {
+				if (lowerCase.endsWith(extension)) {
+					return compression;
+				}
+			}
+		}
+		
+		return NONE;
+	}
+	
+	/**
+	 * Returns the filename without the extension that indicates 
+	 * compression, if there is one; so "invoices.csv.gz" 
+	 * becomes "invoices.csv".
+	 */
+	public static String stripExtension(String filename) {
+		String lowerCase = filename.toLowerCase();
+		for (String extension : forFilename(filename).extensions) {
+			if (lowerCase.endsWith(extension)) {
+				return filename.substring(0, 
+						filename.length() - extension.length());
+			}
+		}
+		
+		return filename;
+	}
+	
+	/**
+	 * Reads the one entry of a ZIP archive, and fails at the end of that 
+	 * entry if there is another one, rather than silently leave it unread.
+	 */
+	private static class SingleEntryZipInputStream extends ZipInputStream {
+		
+		private boolean checked;
+		
+		public SingleEntryZipInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) 
+				throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read == -1 && !checked) {
+				checked = true;
+				if (getNextEntry() != null) {
+					throw new IOException("ZIP archive has more than one entry.");
+				}
+			}
+			return read;
+		}
+	}
+	
+	/**
+	 * Wraps the given stream so as to decompress it, using a buffer of
+	 * the given size. A ZIP archive must hold a single entry; we read that,
+	 * and fail at the end of it if there are more.
+	 */
+	public InputStream decompress(InputStream in, int bufferSize) 
+			throws IOException {
+		switch (this) {
+		case NONE:
+			return in;
+		case GZIP:
+			return new GZIPInputStream(in, bufferSize);
+		case ZIP:
+			ZipInputStream zipIn = new SingleEntryZipInputStream(in);
+			if (zipIn.getNextEntry() == null) {
+				throw new IOException("ZIP archive has no entries.");
+			}
+			return zipIn;
+		case DEFLATE:
+			return new InflaterInputStream(in, 
+					new Inflater(), bufferSize);
+		default:
+			throw new IOException(this + " compression is not supported.");
+		}
+	}
+	
+	/**
+	 * Wraps the given stream so as to compress what's written to it, 
+	 * using a buffer of the given size. For a ZIP archive we write a 
+	 * single entry of the given name.
+	 */
+	public OutputStream compress(OutputStream out, String entryName, 
+			int bufferSize) throws IOException {
+		switch (this) {
+		case NONE:
+			return out;
+		case GZIP:
+			return new GZIPOutputStream(out, bufferSize);
+		case ZIP:
+			ZipOutputStream zipOut = new ZipOutputStream(out);
+			zipOut.putNextEntry(new ZipEntry(entryName));
+			return zipOut;
+		case DEFLATE:
+			return new DeflaterOutputStream(out, 
+					new Deflater(), bufferSize);
+		default:
+			throw new IOException(this + " compression is not supported.");
+		}
+	}
+}
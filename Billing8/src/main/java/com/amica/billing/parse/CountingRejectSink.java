@@ -0,0 +1,55 @@
+package com.amica.billing.parse;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Base class for sinks, which keeps a count of rejects for each reason.
+ * Counting is thread-safe, so one sink can be shared by parsers that
+ * are working concurrently.
+ * 
+ * @author Will Provost
+ */
+public abstract class CountingRejectSink implements RejectSink {
+
+	private AtomicLongArray counts = 
+			new AtomicLongArray(Reason.values().length);
+
+	/**
+	 * Counts the reject and passes it along to {@link #accept accept()}.
+	 */
+	public void reject(RecordType type, Reason reason, String record) {
+		accept(type, reason, record, counts.incrementAndGet(reason.ordinal()));
+	}
+	
+	/**
+	 * Subclasses handle the reject here; the count includes this reject.
+	 */
+	protected abstract void accept(RecordType type, Reason reason, 
+			String record, long count);
+	
+	public Map<Reason,Long> getCounts() {
+		Map<Reason,Long> result = new EnumMap<>(Reason.class);
+		for (Reason reason : Reason.values()) {
+			long count = counts.get(reason.ordinal());
+			if (count != 0) {
+				result.put(reason, count);
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the total number of rejects for all reasons.
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < counts.length(); ++i) {
+			total += counts.get(i);
+		}
+		
+		return total;
+	}
+}
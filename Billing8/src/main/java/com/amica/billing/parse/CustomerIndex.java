@@ -0,0 +1,215 @@
+package com.amica.billing.parse;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.amica.billing.Customer;
+
+/**
+ * Finds customers by first and last name without building a name string
+ * for each lookup. The names can be given as separate character sequences,
+ * or as ranges of characters or bytes in a larger line of input, so a parser
+ * can probe the index straight from the record it is reading.
+ * Hashing matches {@link String#hashCode} for the full name, and entries
+ * are compared against each customer's cached {@link Customer#getName name}.
+ *
+ * An index built over a collection never changes, and is safe to share
+ * between threads. An index made from a map falls back to that map for
+ * names it doesn't hold, which is how {@link DeferredCustomers} hands out
+ * placeholders, and adds what it finds there to its own table, so each name
+ * costs one string only the first time we see it. Such an index is for
+ * one thread at a time, as when a parser reads through a file.
+ *
+ * @author Will Provost
+ */
+public class CustomerIndex {
+
+	private Customer[] table;
+	private int[] hashes;
+	private int mask;
+	private int size;
+	private Map<String,Customer> fallback;
+
+	/**
+	 * Builds an index over the given customers.
+	 */
+	public CustomerIndex(Collection<Customer> customers) {
+		this(customers, null);
+	}
+
+	private CustomerIndex(Collection<Customer> customers,
+			Map<String,Customer> fallback) {
+
+		int capacity = Integer.highestOneBit
+				(Math.max(4, customers.size() * 2 - 1)) << 1;
+		table = new Customer[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		this.fallback = fallback;
+
+		for (Customer customer : customers) {
+			String name = customer.getName();
+			int hash = name.hashCode();
+			int slot = hash & mask;
+			while (table[slot] != null &&
+					!table[slot].getName().equals(name)) {
+				slot = (slot + 1) & mask;
+			}
+			if (table[slot] == null) {
+				table[slot] = customer;
+				hashes[slot] = hash;
+				++size;
+			}
+		}
+	}
+
+	/**
+	 * Helper to look up a name we don't hold in the fallback map, and to
+	 * hold on to what we find there.
+	 */
+	private Customer fromFallback(String name, int hash) {
+		Customer customer = fallback != null ? fallback.get(name) : null;
+		if (customer != null) {
+			if ((size + 1) * 2 > table.length) {
+				rehash(table.length * 2);
+			}
+			insert(customer, hash);
+			++size;
+		}
+		return customer;
+	}
+
+	private void insert(Customer customer, int hash) {
+		int slot = hash & mask;
+		while (table[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = customer;
+		hashes[slot] = hash;
+	}
+
+	private void rehash(int capacity) {
+		Customer[] oldTable = table;
+		int[] oldHashes = hashes;
+		table = new Customer[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		for (int slot = 0; slot < oldTable.length; ++slot) {
+			if (oldTable[slot] != null) {
+				insert(oldTable[slot], oldHashes[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Builds an index over the values in the given map, which is also
+	 * consulted for any name that isn't found in the index.
+	 */
+	public static CustomerIndex of(Map<String,Customer> customers) {
+		return new CustomerIndex(customers.values(), customers);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Helper to hash a name given as two ranges, the way
+	 * {@link String#hashCode} would hash "first last".
+	 */
+	private static int hash(CharSequence first, int firstStart, int firstEnd,
+			CharSequence last, int lastStart, int lastEnd) {
+		int hash = 0;
+		for (int i = firstStart; i < firstEnd; ++i) {
+			hash = 31 * hash + first.charAt(i);
+		}
+		hash = 31 * hash + ' ';
+		for (int i = lastStart; i < lastEnd; ++i) {
+			hash = 31 * hash + last.charAt(i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Helper to compare a name given as two ranges with a full name.
+	 */
+	private static boolean matches(String name,
+			CharSequence first, int firstStart, int firstEnd,
+			CharSequence last, int lastStart, int lastEnd) {
+		int firstLength = firstEnd - firstStart;
+		if (name.length() != firstLength + 1 + lastEnd - lastStart ||
+				name.charAt(firstLength) != ' ') {
+			return false;
+		}
+		for (int i = 0; i < firstLength; ++i) {
+			if (name.charAt(i) != first.charAt(firstStart + i)) {
+				return false;
+			}
+		}
+		for (int i = lastStart, j = firstLength + 1; i < lastEnd; ++i, ++j) {
+			if (name.charAt(j) != last.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the customer with the given full name, or null.
+	 */
+	public Customer get(String name) {
+		int hash = name.hashCode();
+		for (int slot = hash & mask; table[slot] != null;
+				slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && table[slot].getName().equals(name)) {
+				return table[slot];
+			}
+		}
+		return fromFallback(name, hash);
+	}
+
+	/**
+	 * Finds the customer with the given first and last names, or null.
+	 */
+	public Customer get(CharSequence first, CharSequence last) {
+		return get(first, 0, first.length(), last, 0, last.length());
+	}
+
+	/**
+	 * Finds the customer whose first and last names are found at the
+	 * given ranges of the given line, or null.
+	 */
+	public Customer get(CharSequence line, int firstStart, int firstEnd,
+			int lastStart, int lastEnd) {
+		return get(line, firstStart, firstEnd, line, lastStart, lastEnd);
+	}
+
+	/**
+	 * Finds the customer whose first and last names are found at the given
+	 * ranges of the given sequences, or null.
+	 */
+	public Customer get(CharSequence first, int firstStart, int firstEnd,
+			CharSequence last, int lastStart, int lastEnd) {
+		int hash = hash(first, firstStart, firstEnd, last, lastStart, lastEnd);
+		for (int slot = hash & mask; table[slot] != null;
+				slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && matches(table[slot].getName(),
+					first, firstStart, firstEnd, last, lastStart, lastEnd)) {
+				return table[slot];
+			}
+		}
+		return fallback != null
+			? fromFallback(first.subSequence(firstStart, firstEnd) + " " +
+				last.subSequence(lastStart, lastEnd), hash)
+			: null;
+	}
+
+	/**
+	 * Finds the customer whose first and last names are found at the given
+	 * ranges of a buffer of single-byte (ASCII or Latin-1) text, or null.
+	 */
+	public Customer get(byte[] bytes, int firstStart, int firstEnd,
+			int lastStart, int lastEnd) {
+		return get(new Latin1(bytes), firstStart, firstEnd, lastStart, lastEnd);
+	}
+}
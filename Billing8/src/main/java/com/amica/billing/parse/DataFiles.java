@@ -0,0 +1,76 @@
+package com.amica.billing.parse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility for opening customer and invoice files, with transparent
+ * {@link Compression compression}. Reading recognizes compressed content
+ * by its leading bytes, regardless of the filename; writing compresses
+ * if the filename has a compression extension such as ".gz".
+ * We use large buffers on both sides of the codec.
+ * 
+ * @author Will Provost
+ */
+public class DataFiles {
+
+	public static final int BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Opens the file as a buffered stream of decompressed content, 
+	 * which supports mark/reset.
+	 */
+	public static InputStream openStream(String filename) throws IOException {
+		InputStream in = new BufferedInputStream
+				(new FileInputStream(filename), BUFFER_SIZE);
+		try {
+			Compression compression = Compression.detect(in);
+			return compression == Compression.NONE ? in
+				: new BufferedInputStream(compression.decompress
+					(in, BUFFER_SIZE), BUFFER_SIZE);
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Opens the file for reading decompressed text.
+	 */
+	public static Reader openReader(String filename) throws IOException {
+		return new BufferedReader(new InputStreamReader
+				(openStream(filename), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+	
+	/**
+	 * Opens the file for writing text, compressed according to its extension.
+	 */
+	public static Writer openWriter(String filename) throws IOException {
+		Compression compression = Compression.forFilename(filename);
+		OutputStream out = new BufferedOutputStream
+				(new FileOutputStream(filename), BUFFER_SIZE);
+		try {
+			out = compression.compress(out, new File
+				(Compression.stripExtension(filename)).getName(), BUFFER_SIZE);
+		} catch (IOException ex) {
+			out.close();
+			throw ex;
+		}
+		
+		return new BufferedWriter(new OutputStreamWriter
+				(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+}
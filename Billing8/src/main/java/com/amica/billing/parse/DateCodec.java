@@ -0,0 +1,226 @@
+package com.amica.billing.parse;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Reads and writes the fixed date layouts found in our files, yyyy-MM-dd
+ * and MMddyy, directly from and to ranges of characters or bytes.
+ * Each field is checked for digits and for a real calendar date, and is
+ * then found as an epoch day or as a {@link LocalDate}. Dates in our data
+ * cluster heavily, so the LocalDates are shared through a small cache,
+ * and a run of invoices on the same few days creates only a few objects.
+ *
+ * @author Will Provost
+ */
+public class DateCodec {
+
+	public static final int ISO_LENGTH = 10;
+	public static final int SHORT_LENGTH = 6;
+	public static final int SHORT_CENTURY = 2000;
+
+	private static final int CACHE_SIZE = 4096;
+	private static final LocalDate[] cache = new LocalDate[CACHE_SIZE];
+
+	private static final int DAYS_0000_TO_1970 = 719528;
+
+	private DateCodec() {}
+
+	/**
+	 * Parses a yyyy-MM-dd date from the whole of the given text.
+	 */
+	public static LocalDate parseISO(CharSequence text) {
+		return parseISO(text, 0, text.length());
+	}
+
+	/**
+	 * Parses a yyyy-MM-dd date from the given range of characters.
+	 *
+	 * @throws DateTimeException if the range doesn't hold a valid date
+	 *         in that layout
+	 */
+	public static LocalDate parseISO(CharSequence text, int start, int end) {
+		if (end - start != ISO_LENGTH ||
+				text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-') {
+			throw badDate(text, start, end);
+		}
+		return date(digits(text, start, 4), digits(text, start + 5, 2),
+				digits(text, start + 8, 2), text, start, end);
+	}
+
+	/**
+	 * Parses a yyyy-MM-dd date from the given range of bytes.
+	 */
+	public static LocalDate parseISO(byte[] bytes, int start, int end) {
+		return parseISO(new Latin1(bytes), start, end);
+	}
+
+	/**
+	 * Parses a MMddyy date from the given range of characters.
+	 * Two-digit years are taken to be in this century.
+	 *
+	 * @throws DateTimeException if the range doesn't hold a valid date
+	 *         in that layout
+	 */
+	public static LocalDate parseShort(CharSequence text, int start, int end) {
+		if (end - start != SHORT_LENGTH) {
+			throw badDate(text, start, end);
+		}
+		return date(SHORT_CENTURY + digits(text, start + 4, 2),
+				digits(text, start, 2), digits(text, start + 2, 2),
+				text, start, end);
+	}
+
+	/**
+	 * Parses a MMddyy date from the given range of bytes.
+	 */
+	public static LocalDate parseShort(byte[] bytes, int start, int end) {
+		return parseShort(new Latin1(bytes), start, end);
+	}
+
+	/**
+	 * Parses a yyyy-MM-dd date from the given range of characters,
+	 * straight to an epoch day without making a LocalDate.
+	 */
+	public static long parseISOEpochDay(CharSequence text, int start, int end) {
+		if (end - start != ISO_LENGTH ||
+				text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-') {
+			throw badDate(text, start, end);
+		}
+		int year = digits(text, start, 4);
+		int month = digits(text, start + 5, 2);
+		int day = digits(text, start + 8, 2);
+		if (year < 0 || !isValid(year, month, day)) {
+			throw badDate(text, start, end);
+		}
+		return epochDay(year, month, day);
+	}
+
+	/**
+	 * Finds the epoch day for a valid date, by the same arithmetic as
+	 * {@link LocalDate#toEpochDay} but without making the date.
+	 */
+	public static long epochDay(int year, int month, int day) {
+		long y = year;
+		long total = 365 * y;
+		if (y >= 0) {
+			total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+		} else {
+			total -= y / -4 - y / -100 + y / -400;
+		}
+		total += (367 * month - 362) / 12;
+		total += day - 1;
+		if (month > 2) {
+			--total;
+			if (!isLeapYear(year)) {
+				--total;
+			}
+		}
+		return total - DAYS_0000_TO_1970;
+	}
+
+	/**
+	 * Appends a date as yyyy-MM-dd.
+	 */
+	public static StringBuilder appendISO(StringBuilder out, LocalDate date) {
+		int year = date.getYear();
+		if (year < 1000) {
+			pad(out, year, 4);
+		} else {
+			out.append(year);
+		}
+		out.append('-');
+		pad(out, date.getMonthValue(), 2).append('-');
+		return pad(out, date.getDayOfMonth(), 2);
+	}
+
+	/**
+	 * Appends a date as MMddyy.
+	 */
+	public static StringBuilder appendShort(StringBuilder out, LocalDate date) {
+		pad(out, date.getMonthValue(), 2);
+		pad(out, date.getDayOfMonth(), 2);
+		return pad(out, Math.floorMod(date.getYear(), 100), 2);
+	}
+
+	public static String formatISO(LocalDate date) {
+		return appendISO(new StringBuilder(ISO_LENGTH), date).toString();
+	}
+
+	public static String formatShort(LocalDate date) {
+		return appendShort(new StringBuilder(SHORT_LENGTH), date).toString();
+	}
+
+	/**
+	 * Helper to read a fixed number of decimal digits.
+	 */
+	private static int digits(CharSequence text, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; ++i) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	private static boolean isValid(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1) {
+			return false;
+		}
+		int length = month == 2 ? (isLeapYear(year) ? 29 : 28)
+			: month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+		return day <= length;
+	}
+
+	/**
+	 * Helper to check the fields of a date and get it from the cache.
+	 */
+	private static LocalDate date(int year, int month, int day,
+			CharSequence text, int start, int end) {
+		if (year < 0 || !isValid(year, month, day)) {
+			throw badDate(text, start, end);
+		}
+		return cached(year, month, day);
+	}
+
+	/**
+	 * Helper to find a date in the cache, which is direct-mapped: each date
+	 * has one slot, shared with dates about eleven years apart, and a date
+	 * that isn't found in its slot replaces whatever was there. A slot holds one
+	 * immutable object, so threads can share the cache without locking.
+	 */
+	private static LocalDate cached(int year, int month, int day) {
+		int slot = (year * 372 + month * 31 + day) & (CACHE_SIZE - 1);
+		LocalDate found = cache[slot];
+		if (found != null && found.getDayOfMonth() == day &&
+				found.getMonthValue() == month && found.getYear() == year) {
+			return found;
+		}
+
+		found = LocalDate.of(year, month, day);
+		cache[slot] = found;
+		return found;
+	}
+
+	private static StringBuilder pad(StringBuilder out, int value, int width) {
+		for (int limit = 10; width > 1; --width, limit *= 10) {
+			if (value < limit) {
+				out.append('0');
+			}
+		}
+		return out.append(value);
+	}
+
+	private static DateTimeException badDate
+			(CharSequence text, int start, int end) {
+		return new DateTimeException
+			("Not a date: \"" + text.subSequence(start, end) + "\"");
+	}
+}
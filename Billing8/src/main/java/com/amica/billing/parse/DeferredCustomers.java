@@ -0,0 +1,108 @@
+package com.amica.billing.parse;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+import com.amica.billing.Money;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
+
+import lombok.extern.java.Log;
+
+/**
+ * Stands in for the map of customers when invoices are parsed before the
+ * customers are loaded. Every lookup succeeds, returning a
+ * {@link Placeholder} that knows only the customer name; once the real
+ * customers are loaded, {@link #resolve resolve()} links each invoice
+ * to its customer in a single pass.
+ *
+ * @author Will Provost
+ */
+@Log
+public class DeferredCustomers extends AbstractMap<String,Customer> {
+
+	/**
+	 * A customer known only by name, until it is resolved.
+	 */
+	public static class Placeholder extends Customer {
+
+		public Placeholder(String name) {
+			super(name, null, null);
+		}
+
+		@Override
+		public String getName() {
+			return getFirstName();
+		}
+	}
+
+	private Map<String,Customer> placeholders = new ConcurrentHashMap<>();
+
+	@Override
+	public Customer get(Object name) {
+		return placeholders.computeIfAbsent(name.toString(), Placeholder::new);
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return name instanceof String;
+	}
+
+	/**
+	 * Returns the placeholders handed out so far.
+	 */
+	@Override
+	public Set<Map.Entry<String,Customer>> entrySet() {
+		return placeholders.entrySet();
+	}
+
+	/**
+	 * Links each invoice that refers to a {@link Placeholder} to the real
+	 * customer of that name. Invoices whose customer can't be found are
+	 * sent to the given reject sink, or logged if that is null,
+	 * and dropped from the stream. We don't hold on to the raw text of
+	 * every record until now, so we reject a record that we rebuild from
+	 * the invoice: number, customer name, amount, date, and paid date.
+	 */
+	public static Stream<Invoice> resolve(Stream<Invoice> invoices,
+			Map<String,Customer> customers, RejectSink rejectSink) {
+
+		RejectSink sink = rejectSink != null
+				? rejectSink : new LoggingRejectSink(log);
+		return invoices.map(invoice -> {
+				Customer customer = invoice.getCustomer();
+				if (customer instanceof Placeholder) {
+					Customer resolved = customers.get(customer.getName());
+					if (resolved == null) {
+						sink.reject(RecordType.INVOICE, Reason.UNKNOWN_CUSTOMER,
+							formatRecord(invoice));
+						return null;
+					}
+					invoice.setCustomer(resolved);
+				}
+				return invoice;
+			}).filter(invoice -> invoice != null);
+	}
+
+	/**
+	 * Helper to rebuild the text of a rejected invoice from its fields.
+	 */
+	private static String formatRecord(Invoice invoice) {
+		StringBuilder record = new StringBuilder(64)
+				.append(invoice.getNumber()).append(',')
+				.append(invoice.getCustomer().getName()).append(',');
+		Money.append(record, invoice.getCents()).append(',');
+		DateCodec.appendISO(record, invoice.getTheDate());
+		LocalDate paid = invoice.getPaidDate();
+		if (paid != null) {
+			DateCodec.appendISO(record.append(','), paid);
+		}
+		return record.toString();
+	}
+}
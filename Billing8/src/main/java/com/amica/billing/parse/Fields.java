@@ -0,0 +1,42 @@
+package com.amica.billing.parse;
+
+/**
+ * Helpers for reading values from ranges of a line of input
+ * without taking substrings.
+ *
+ * @author Will Provost
+ */
+class Fields {
+
+	private Fields() {}
+
+	/**
+	 * Parses a non-negative integer from the given range, ignoring spaces
+	 * around it.
+	 *
+	 * @throws NumberFormatException if the range doesn't hold digits only,
+	 *         or the number is too large for an int
+	 */
+	static int parseInt(CharSequence text, int start, int end) {
+		while (start < end && text.charAt(start) == ' ') {
+			++start;
+		}
+		while (end > start && text.charAt(end - 1) == ' ') {
+			--end;
+		}
+		if (start == end) {
+			throw new NumberFormatException("No digits");
+		}
+
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - (c - '0')) / 10) {
+				throw new NumberFormatException
+					("Not a number: \"" + text.subSequence(start, end) + "\"");
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,171 @@
+package com.amica.billing.parse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
+
+/**
+ * A file of invoices in the flat format, held as the raw bytes and the
+ * offsets of its lines, and read through {@link InvoiceView}s that decode
+ * each field only when it's asked for. This costs two ints per invoice
+ * beyond the file itself, and heap objects are made only for the invoices
+ * that a caller actually takes, by way of {@link #select select()}.
+ *
+ * The bytes are read as UTF-8, as {@link DataFiles#openReader} reads
+ * them; we copy them to a string only if they aren't all ASCII.
+ * Lines too short to hold the fixed fields, and lines for customers we
+ * don't know, are rejected as we load; other problems in a line are found
+ * only if the bad field is read, and then as the exception from the 
+ * decoder.
+ *
+ * @author Will Provost
+ */
+public class FlatInvoiceBuffer {
+
+	private CharSequence text;
+	private CustomerIndex customers;
+	private int[] starts;
+	private int[] ends;
+	private int size;
+
+	/**
+	 * Reads the whole of the given stream of flat invoice data.
+	 */
+	public static FlatInvoiceBuffer load(InputStream in,
+			Map<String,Customer> customers, RejectSink rejectSink)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+		byte[] chunk = new byte[1 << 16];
+		int count;
+		while ((count = in.read(chunk)) != -1) {
+			out.write(chunk, 0, count);
+		}
+		return new FlatInvoiceBuffer(out.toByteArray(), customers, rejectSink);
+	}
+
+	/**
+	 * Indexes the lines of the given flat invoice data. Customer names
+	 * are looked up in the given map, through a {@link CustomerIndex}.
+	 */
+	public FlatInvoiceBuffer(byte[] bytes, Map<String,Customer> customers,
+			RejectSink rejectSink) {
+		this.text = isASCII(bytes) 
+			? new Latin1(bytes) : new String(bytes, StandardCharsets.UTF_8);
+		this.customers = CustomerIndex.of(customers);
+
+		int length = text.length();
+		int capacity = Math.max(16, length / (FlatParser.INVOICE_LENGTH + 1));
+		starts = new int[capacity];
+		ends = new int[capacity];
+		InvoiceView view = new InvoiceView(this);
+		int start = 0;
+		while (start < length) {
+			int end = start;
+			while (end < length && text.charAt(end) != '\n') {
+				++end;
+			}
+			int next = end + 1;
+			if (end > start && text.charAt(end - 1) == '\r') {
+				--end;
+			}
+
+			if (end - start >= FlatParser.INVOICE_PAID_DATE_OFFSET) {
+				if (size == starts.length) {
+					starts = Arrays.copyOf(starts, size * 2);
+					ends = Arrays.copyOf(ends, size * 2);
+				}
+				starts[size] = start;
+				ends[size] = end;
+				if (view.moveTo(size++).getCustomer() == null) {
+					--size;
+					reject(rejectSink, Reason.UNKNOWN_CUSTOMER, start, end);
+				}
+			} else if (end > start) {
+				reject(rejectSink, Reason.LENGTH, start, end);
+			}
+			start = next;
+		}
+	}
+
+	private static boolean isASCII(byte[] bytes) {
+		for (byte b : bytes) {
+			if (b < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void reject(RejectSink rejectSink, Reason reason, 
+			int start, int end) {
+		if (rejectSink != null) {
+			rejectSink.reject(RecordType.INVOICE, reason, 
+					text.subSequence(start, end).toString());
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a new view of the given row.
+	 */
+	public InvoiceView view(int row) {
+		return new InvoiceView(this).moveTo(row);
+	}
+
+	/**
+	 * Passes each row to the given consumer, through one view that moves
+	 * from row to row; so the consumer mustn't hold on to the view.
+	 */
+	public void forEach(Consumer<InvoiceView> consumer) {
+		InvoiceView view = new InvoiceView(this);
+		for (int row = 0; row < size; ++row) {
+			consumer.accept(view.moveTo(row));
+		}
+	}
+
+	/**
+	 * Lazily makes {@link Invoice}s of the rows that pass the given test,
+	 * which sees each row through one moving view, as {@link #forEach}.
+	 * The stream must be consumed in order, and not in parallel.
+	 */
+	public Stream<Invoice> select(Predicate<InvoiceView> test) {
+		InvoiceView view = new InvoiceView(this);
+		return IntStream.range(0, size)
+				.filter(row -> test.test(view.moveTo(row)))
+				.mapToObj(row -> view.moveTo(row).toInvoice());
+	}
+
+	CharSequence getText() {
+		return text;
+	}
+
+	CustomerIndex getCustomers() {
+		return customers;
+	}
+
+	int getStart(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+		return starts[row];
+	}
+
+	int getEnd(int row) {
+		return ends[row];
+	}
+}
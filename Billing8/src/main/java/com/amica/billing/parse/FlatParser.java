@@ -2,17 +2,24 @@ package com.amica.billing.parse;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import com.amica.billing.Customer;
 import com.amica.billing.Invoice;
+import com.amica.billing.Money;
 import com.amica.billing.Terms;
+import com.amica.billing.parse.InvoiceColumns.Column;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
 
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.java.Log;
 
@@ -32,29 +39,33 @@ public class FlatParser implements Producer {
 	private static final int CUSTOMER_TERMS_OFFSET = 
 			CUSTOMER_LAST_NAME_OFFSET + CUSTOMER_LAST_NAME_LENGTH;
 	private static final int CUSTOMER_TERMS_LENGTH = 10;
-	private static final int CUSTOMER_LENGTH = 
+	static final int CUSTOMER_LENGTH = 
 			CUSTOMER_TERMS_OFFSET + CUSTOMER_TERMS_LENGTH;
 
-	private static final int INVOICE_NUMBER_OFFSET = 0;
-	private static final int INVOICE_NUMBER_LENGTH = 4;
-	private static final int INVOICE_FIRST_NAME_OFFSET = 
+	static final int INVOICE_NUMBER_OFFSET = 0;
+	static final int INVOICE_NUMBER_LENGTH = 4;
+	static final int INVOICE_FIRST_NAME_OFFSET = 
 			INVOICE_NUMBER_OFFSET + INVOICE_NUMBER_LENGTH;
-	private static final int INVOICE_FIRST_NAME_LENGTH = 12;
-	private static final int INVOICE_LAST_NAME_OFFSET = 
+	static final int INVOICE_FIRST_NAME_LENGTH = 12;
+	static final int INVOICE_LAST_NAME_OFFSET = 
 			INVOICE_FIRST_NAME_OFFSET + INVOICE_FIRST_NAME_LENGTH;
-	private static final int INVOICE_LAST_NAME_LENGTH = 12;
-	private static final int INVOICE_AMOUNT_OFFSET = 
+	static final int INVOICE_LAST_NAME_LENGTH = 12;
+	static final int INVOICE_AMOUNT_OFFSET = 
 			INVOICE_LAST_NAME_OFFSET + INVOICE_LAST_NAME_LENGTH;
-	private static final int INVOICE_AMOUNT_LENGTH = 8;
-	private static final int INVOICE_DATE_OFFSET = 
+	static final int INVOICE_AMOUNT_LENGTH = 8;
+	static final int INVOICE_DATE_OFFSET = 
 			INVOICE_AMOUNT_OFFSET + INVOICE_AMOUNT_LENGTH;
-	private static final int INVOICE_DATE_LENGTH = 6;
-	private static final int INVOICE_PAID_DATE_OFFSET = 
+	static final int INVOICE_DATE_LENGTH = 6;
+	static final int INVOICE_PAID_DATE_OFFSET = 
 			INVOICE_DATE_OFFSET + INVOICE_DATE_LENGTH;
-	private static final int INVOICE_PAID_DATE_LENGTH = 6;
-	private static final int INVOICE_LENGTH = 
+	static final int INVOICE_PAID_DATE_LENGTH = 6;
+	static final int INVOICE_LENGTH = 
 			INVOICE_PAID_DATE_OFFSET + INVOICE_PAID_DATE_LENGTH;
 
+	@Getter
+	@Setter
+	private RejectSink rejectSink = new LoggingRejectSink(log);
+
 	/**
 	 * Helper that can parse one line of text in order to
 	 * produce a {@link Customer} object.
@@ -70,68 +81,161 @@ public class FlatParser implements Producer {
 						(CUSTOMER_TERMS_OFFSET, CUSTOMER_LENGTH).trim());
 				return new Customer(firstName, lastName, terms);
 			} catch (Exception ex) {
-				log.warning(() -> 
-						"Couldn't parse terms value, skipping customer: " + line);
+				rejectSink.reject(RecordType.CUSTOMER, Reason.TERMS, line);
 			}
 		} else {
-			log.warning(() -> "Incorrect length, skipping customer: " + line);
+			rejectSink.reject(RecordType.CUSTOMER, Reason.LENGTH, line);
 		}
 		
 		return null;
 	}
 
+	/**
+	 * Helper to find the start of a padded field.
+	 */
+	private static int skipSpaces(String line, int start) {
+		while (start < line.length() && line.charAt(start) == ' ') {
+			++start;
+		}
+		return start;
+	}
+	
+	/**
+	 * Helper to find the end of a padded field, without the padding.
+	 */
+	private static int trimSpaces(String line, int start, int end) {
+		while (end > start && line.charAt(end - 1) == ' ') {
+			--end;
+		}
+		return end;
+	}
+	
 	/**
 	 * Helper that can parse one line of text in order to
-	 * produce an {@link Invoice} object.
+	 * produce an {@link Invoice} object, or null if the line is rejected
+	 * or doesn't pass the given filter. Because fields are at fixed offsets,
+	 * we can tell whether the invoice is paid by looking for anything but
+	 * spaces in the paid-date field, and check the issue date, before 
+	 * parsing any of the rest of the line.
 	 */
 	@SneakyThrows
-	private Invoice parseInvoice(String line, Map<String, Customer> customers) {
+	private Invoice parseInvoice(String line, CustomerIndex customers,
+			InvoiceFilter filter) {
 
 		if (line.length() >= INVOICE_PAID_DATE_OFFSET) {
 			try {
+				if (filter.isUnpaidOnly() && skipSpaces(line, 
+						INVOICE_PAID_DATE_OFFSET) < line.length()) {
+					return null;
+				}
+				LocalDate theDate = DateCodec.parseShort
+						(line, INVOICE_DATE_OFFSET, INVOICE_PAID_DATE_OFFSET);
+				if (!filter.acceptsIssued(theDate)) {
+					return null;
+				}
+				
 				int number = Integer.parseInt(line.substring
 					(INVOICE_NUMBER_OFFSET,
 						INVOICE_FIRST_NAME_OFFSET).trim());
 				
-				String firstName = line.substring
-					(INVOICE_FIRST_NAME_OFFSET,
-						INVOICE_LAST_NAME_OFFSET).trim();
-				String lastName = line.substring
-					(INVOICE_LAST_NAME_OFFSET, 
-						INVOICE_AMOUNT_OFFSET).trim();
+				int firstStart = skipSpaces(line, INVOICE_FIRST_NAME_OFFSET);
+				int firstEnd = trimSpaces(line, firstStart, 
+						INVOICE_LAST_NAME_OFFSET);
+				int lastStart = skipSpaces(line, INVOICE_LAST_NAME_OFFSET);
+				int lastEnd = trimSpaces(line, lastStart, 
+						INVOICE_AMOUNT_OFFSET);
 				
-				double amount = Double.parseDouble(line.substring
-					(INVOICE_AMOUNT_OFFSET, INVOICE_DATE_OFFSET).trim());
+				long cents = Money.parseCents
+						(line, INVOICE_AMOUNT_OFFSET, INVOICE_DATE_OFFSET);
 		
-				DateTimeFormatter parser =
-						DateTimeFormatter.ofPattern("MMddyy");
-				LocalDate theDate = LocalDate.parse(line.substring
-					(INVOICE_DATE_OFFSET, INVOICE_PAID_DATE_OFFSET), parser);
-				String paidString = line.substring(
-						INVOICE_PAID_DATE_OFFSET, INVOICE_LENGTH).trim();
-				LocalDate paidDate = paidString.length() == 
+				int paidStart = skipSpaces(line, INVOICE_PAID_DATE_OFFSET);
+				int paidEnd = trimSpaces(line, paidStart, INVOICE_LENGTH);
+				LocalDate paidDate = paidEnd - paidStart == 
 					INVOICE_PAID_DATE_LENGTH
-						? LocalDate.parse(paidString, parser) : null;
+						? DateCodec.parseShort(line, paidStart, paidEnd) : null;
 		
-				Customer customer = customers.get(firstName + " " +  lastName);
+				Customer customer = customers.get
+						(line, firstStart, firstEnd, lastStart, lastEnd);
 				if (customer != null) {
-					return new Invoice(number, customer, amount, 
-							theDate, paidDate);
+					return filter.acceptsCustomer(customer)
+						? Invoice.ofCents
+							(number, customer, cents, theDate, paidDate)
+						: null;
 				} else {
-					log.warning(() -> 
-						"Unknown customer, skipping invoice: " + line);
+					rejectSink.reject(RecordType.INVOICE, 
+							Reason.UNKNOWN_CUSTOMER, line);
 				}
 			} catch (Exception ex) {
-				log.warning(() -> 
-						"Couldn't parse values, skipping invoice: " + line);
+				rejectSink.reject(RecordType.INVOICE, Reason.VALUES, line);
 			}
 		} else {
-			log.warning(() -> "Incorrect length, skipping invoice: " + line);
+			rejectSink.reject(RecordType.INVOICE, Reason.LENGTH, line);
 		}
 		
 		return null;
 	}
 
+	/**
+	 * Helper that decodes the projected columns of one line into the given
+	 * columns, along with whatever fields the filter needs. Other fields
+	 * are never looked at.
+	 */
+	private void parseInvoiceColumns(String line, CustomerIndex customers,
+			InvoiceFilter filter, InvoiceColumns out) {
+		
+		if (line.length() < INVOICE_PAID_DATE_OFFSET) {
+			rejectSink.reject(RecordType.INVOICE, Reason.LENGTH, line);
+			return;
+		}
+		try {
+			int paidStart = skipSpaces(line, INVOICE_PAID_DATE_OFFSET);
+			if (!filter.acceptsPaid(paidStart < line.length())) {
+				return;
+			}
+			LocalDate theDate = null;
+			if (out.has(Column.DATE) || filter.hasDateRange()) {
+				theDate = DateCodec.parseShort
+						(line, INVOICE_DATE_OFFSET, INVOICE_PAID_DATE_OFFSET);
+				if (!filter.acceptsIssued(theDate)) {
+					return;
+				}
+			}
+			Customer customer = null;
+			if (out.has(Column.CUSTOMER) || filter.hasCustomers()) {
+				int firstStart = skipSpaces(line, INVOICE_FIRST_NAME_OFFSET);
+				int lastStart = skipSpaces(line, INVOICE_LAST_NAME_OFFSET);
+				customer = customers.get(line, 
+					firstStart, trimSpaces(line, firstStart, INVOICE_LAST_NAME_OFFSET),
+					lastStart, trimSpaces(line, lastStart, INVOICE_AMOUNT_OFFSET));
+				if (customer == null) {
+					rejectSink.reject(RecordType.INVOICE, 
+							Reason.UNKNOWN_CUSTOMER, line);
+					return;
+				}
+				if (!filter.acceptsCustomer(customer)) {
+					return;
+				}
+			}
+			
+			int number = out.has(Column.NUMBER)
+				? Fields.parseInt(line, INVOICE_NUMBER_OFFSET, 
+					INVOICE_FIRST_NAME_OFFSET)
+				: 0;
+			long cents = out.has(Column.AMOUNT)
+				? Money.parseCents(line, INVOICE_AMOUNT_OFFSET, INVOICE_DATE_OFFSET)
+				: 0;
+			LocalDate paidDate = null;
+			if (out.has(Column.PAID_DATE)) {
+				int paidEnd = trimSpaces(line, paidStart, INVOICE_LENGTH);
+				paidDate = paidEnd - paidStart == INVOICE_PAID_DATE_LENGTH
+					? DateCodec.parseShort(line, paidStart, paidEnd) : null;
+			}
+			out.add(number, customer, cents, theDate, paidDate);
+		} catch (Exception ex) {
+			rejectSink.reject(RecordType.INVOICE, Reason.VALUES, line);
+		}
+	}
+
 	/**
 	 * Helper to write a flat representation of one customer.
 	 */
@@ -148,20 +252,17 @@ public class FlatParser implements Producer {
 	 */
 	public String formatInvoice(Invoice invoice) {
 		final String formatString = String.format
-			("%%%dd%%-%ds%%-%ds%%%d.2f%%%ds%%%ds\n", 
+			("%%%dd%%-%ds%%-%ds%%%ds%%%ds%%%ds\n", 
 				INVOICE_NUMBER_LENGTH, INVOICE_FIRST_NAME_LENGTH,
 				INVOICE_LAST_NAME_LENGTH, INVOICE_AMOUNT_LENGTH,
 				INVOICE_DATE_LENGTH, INVOICE_PAID_DATE_LENGTH);
-		DateTimeFormatter formatter = 
-				DateTimeFormatter.ofPattern("MMddyy");
-
 		LocalDate paid = invoice.getPaidDate();
 		return String.format(formatString, invoice.getNumber(),
 				invoice.getCustomer().getFirstName(), 
 				invoice.getCustomer().getLastName(),
-				invoice.getAmount(), 
-				formatter.format(invoice.getTheDate()),
-				paid != null ? formatter.format(paid) : "");
+				Money.format(invoice.getCents()), 
+				DateCodec.formatShort(invoice.getTheDate()),
+				paid != null ? DateCodec.formatShort(paid) : "");
 	}
 
 	/**
@@ -181,12 +282,50 @@ public class FlatParser implements Producer {
 	 * objects.
 	 */
 	public Stream<Invoice> parseInvoices(Reader invoiceReader, Map<String, Customer> customers) {
+		return parseInvoices(invoiceReader, customers, InvoiceFilter.ALL);
+	}
 
+	/**
+	 * Consumes the given string streams and translates to {@link Invoices}
+	 * objects, skipping lines that don't pass the given filter.
+	 */
+	@Override
+	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
+			Map<String, Customer> customers, InvoiceFilter filter) {
+
+		CustomerIndex index = CustomerIndex.of(customers);
 		return new BufferedReader(invoiceReader).lines()
-				.map(line -> parseInvoice(line, customers))
+				.map(line -> parseInvoice(line, index, filter))
 				.filter(invoice -> invoice != null);
 	}
 
+	/**
+	 * Consumes the given string stream, decoding only the given columns
+	 * of the lines that pass the given filter. With fields at fixed
+	 * offsets, we go straight to the ones we need.
+	 */
+	@Override
+	public InvoiceColumns parseInvoiceColumns(Reader invoiceReader,
+			Map<String, Customer> customers, Set<Column> columns, 
+			InvoiceFilter filter) {
+		
+		CustomerIndex index = CustomerIndex.of(customers);
+		InvoiceColumns result = new InvoiceColumns(columns);
+		new BufferedReader(invoiceReader).lines().forEach(line -> 
+			parseInvoiceColumns(line, index, filter, result));
+		return result;
+	}
+
+	/**
+	 * Loads the given stream of invoice data into a buffer of raw lines,
+	 * to be read through {@link InvoiceView}s rather than parsed up front.
+	 * Short lines go to our reject sink.
+	 */
+	public FlatInvoiceBuffer loadInvoiceBuffer(InputStream invoiceStream,
+			Map<String, Customer> customers) throws IOException {
+		return FlatInvoiceBuffer.load(invoiceStream, customers, rejectSink);
+	}
+
 	/**
 	 * Maps each customer to a string representation and writes it.
 	 */
@@ -213,4 +352,12 @@ public class FlatParser implements Producer {
 		});
 		
 	}
+
+	/**
+	 * Customers are found only by the name fields on each invoice record.
+	 */
+	@Override
+	public boolean supportsDeferredCustomers() {
+		return true;
+	}
 }
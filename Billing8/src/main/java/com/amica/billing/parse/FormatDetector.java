@@ -0,0 +1,206 @@
+package com.amica.billing.parse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Determines the {@link Parser.Format format} of a customer or invoice file
+ * by looking at its first few kilobytes. The stream must support
+ * mark/reset, and is reset to where it was, so the same stream can then
+ * be handed to the parser. We recognize:
+ * <ul>
+ *   <li>JSON, by an opening array or object</li>
+ *   <li>EXPORT, by its quoted header line</li>
+ *   <li>FLAT, by lines of the fixed customer or invoice record length</li>
+ *   <li>EXCEL, by terms names or an empty trailing paid-date column</li>
+ *   <li>CSV, for other comma-separated content</li>
+ *   <li>compressed content, by the codec's leading bytes; if the JDK 
+ *     supports the codec, we also look at the decompressed content</li>
+ * </ul>
+ * 
+ * @author Will Provost
+ */
+public class FormatDetector {
+
+	public static final int SNIFF_LENGTH = 4096;
+	public static final int COMPRESSED_SNIFF_LIMIT = 64 * 1024;
+	
+	private static final int INFLATE_BUFFER_SIZE = 512;
+	
+	private static final int EXCEL_CUSTOMER_COLUMNS = 3;
+	private static final int EXCEL_INVOICE_COLUMNS = 6;
+	private static final int CSV_UNPAID_INVOICE_COLUMNS = 5;
+	
+	/**
+	 * The result of detection: the content format, if we could tell,
+	 * and any compression applied to it.
+	 */
+	@Data
+	@AllArgsConstructor
+	public static class Detection {
+		private Parser.Format format;
+		private Compression compression;
+	}
+	
+	/**
+	 * Peeks at the start of the given stream, and resets it.
+	 * If the content is compressed with a codec we can't read, or if it
+	 * takes more than {@value #COMPRESSED_SNIFF_LIMIT} compressed bytes
+	 * to get to the leading text, the format is left null.
+	 */
+	public static Detection detect(InputStream in) throws IOException {
+		if (!in.markSupported()) {
+			throw new IllegalArgumentException
+				("Format detection requires a stream that supports mark/reset.");
+		}
+		
+		Compression compression = Compression.detect(in);
+		Parser.Format format = null;
+		if (compression == Compression.NONE) {
+			in.mark(SNIFF_LENGTH);
+			try {
+				format = sniff(in);
+			} finally {
+				in.reset();
+			}
+		} else if (compression.isSupported()) {
+			in.mark(COMPRESSED_SNIFF_LIMIT);
+			try {
+				format = sniff(compression.decompress
+					(new SniffWindow(in), INFLATE_BUFFER_SIZE));
+			} catch (IOException ex) {
+				format = null;
+			} finally {
+				in.reset();
+			}
+		}
+		
+		return new Detection(format, compression);
+	}
+	
+	/**
+	 * Helper to read leading text and detect its format.
+	 */
+	private static Parser.Format sniff(InputStream in) throws IOException {
+		byte[] head = new byte[SNIFF_LENGTH];
+		int length = 0;
+		int count;
+		while (length < head.length && 
+				(count = in.read(head, length, head.length - length)) != -1) {
+			length += count;
+		}
+		
+		return detect(new String(head, 0, length, StandardCharsets.UTF_8),
+				length == head.length);
+	}
+	
+	/**
+	 * Shields the stream we're given from being closed by a decompressor,
+	 * and from being read past the point to which it can be reset.
+	 */
+	private static class SniffWindow extends FilterInputStream {
+		private int remaining = COMPRESSED_SNIFF_LIMIT;
+		
+		public SniffWindow(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			--remaining;
+			return super.read();
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) 
+				throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int count = super.read(buffer, offset, Math.min(length, remaining));
+			if (count > 0) {
+				remaining -= count;
+			}
+			return count;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+		@Override
+		public void close() {}
+	}
+	
+	/**
+	 * Determines the format of the given leading text, or returns null
+	 * if we can't tell. If the text is truncated, the last partial line
+	 * is ignored.
+	 */
+	public static Parser.Format detect(String text, boolean truncated) {
+		if (text.startsWith("\uFEFF")) {
+			text = text.substring(1);
+		}
+		int start = 0;
+		while (start < text.length() && 
+				Character.isWhitespace(text.charAt(start))) {
+			++start;
+		}
+		if (start == text.length()) {
+			return null;
+		}
+		
+		char first = text.charAt(start);
+		if (first == '[' || first == '{') {
+			return Parser.Format.JSON;
+		}
+		if (first == '"') {
+			return Parser.Format.EXPORT;
+		}
+		
+		String[] lines = text.split("\r?\n");
+		int count = truncated && lines.length > 1 
+				? lines.length - 1 : lines.length;
+		
+		boolean commas = false;
+		boolean fixed = true;
+		for (int i = 0; i < count; ++i) {
+			if (lines[i].indexOf(',') != -1) {
+				commas = true;
+			}
+			int length = lines[i].length();
+			if (length != 0 && length != FlatParser.CUSTOMER_LENGTH &&
+					length != FlatParser.INVOICE_LENGTH) {
+				fixed = false;
+			}
+		}
+		if (!commas) {
+			return fixed ? Parser.Format.FLAT : null;
+		}
+		
+		boolean excel = false;
+		for (int i = 0; i < count; ++i) {
+			String[] fields = lines[i].split(",", -1);
+			if (fields.length == CSV_UNPAID_INVOICE_COLUMNS) {
+				return Parser.Format.CSV;
+			}
+			if ((fields.length == EXCEL_CUSTOMER_COLUMNS && 
+						fields[EXCEL_CUSTOMER_COLUMNS - 1].startsWith("CREDIT_")) ||
+					(fields.length == EXCEL_INVOICE_COLUMNS &&
+						fields[EXCEL_INVOICE_COLUMNS - 1].isEmpty())) {
+				excel = true;
+			}
+		}
+		
+		return excel ? Parser.Format.EXCEL : Parser.Format.CSV;
+	}
+}
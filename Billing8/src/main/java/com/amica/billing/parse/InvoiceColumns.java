@@ -0,0 +1,168 @@
+package com.amica.billing.parse;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+
+/**
+ * Columnar holder for the invoice fields a job asks for, as parsed by
+ * {@link Parser#parseInvoiceColumns}. Only the requested {@link Column}s
+ * are stored, each in its own array that grows as rows are added; amounts
+ * are kept as cents in a primitive array. Asking for a column that wasn't
+ * requested is an error.
+ *
+ * @author Will Provost
+ */
+public class InvoiceColumns {
+
+	/**
+	 * The fields of an invoice that can be projected.
+	 */
+	public enum Column { NUMBER, CUSTOMER, AMOUNT, DATE, PAID_DATE }
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private Set<Column> columns;
+	private int size;
+	private int[] numbers;
+	private Customer[] customers;
+	private long[] cents;
+	private LocalDate[] dates;
+	private LocalDate[] paidDates;
+
+	public InvoiceColumns(Collection<Column> columns) {
+		this.columns = EnumSet.noneOf(Column.class);
+		this.columns.addAll(columns);
+		numbers = has(Column.NUMBER) ? new int[INITIAL_CAPACITY] : null;
+		customers = has(Column.CUSTOMER) ? new Customer[INITIAL_CAPACITY] : null;
+		cents = has(Column.AMOUNT) ? new long[INITIAL_CAPACITY] : null;
+		dates = has(Column.DATE) ? new LocalDate[INITIAL_CAPACITY] : null;
+		paidDates = has(Column.PAID_DATE) ? new LocalDate[INITIAL_CAPACITY] : null;
+	}
+
+	public boolean has(Column column) {
+		return columns.contains(column);
+	}
+
+	public Set<Column> getColumns() {
+		return EnumSet.copyOf(columns);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a row. Values for columns we don't hold are ignored.
+	 */
+	public void add(int number, Customer customer, long amountInCents,
+			LocalDate date, LocalDate paidDate) {
+		if (size == capacity()) {
+			grow();
+		}
+		if (numbers != null) {
+			numbers[size] = number;
+		}
+		if (customers != null) {
+			customers[size] = customer;
+		}
+		if (cents != null) {
+			cents[size] = amountInCents;
+		}
+		if (dates != null) {
+			dates[size] = date;
+		}
+		if (paidDates != null) {
+			paidDates[size] = paidDate;
+		}
+		++size;
+	}
+
+	/**
+	 * Adds the projected fields of a parsed invoice.
+	 */
+	public void add(Invoice invoice) {
+		add(invoice.getNumber(), invoice.getCustomer(), invoice.getCents(),
+				invoice.getTheDate(), invoice.getPaidDate());
+	}
+
+	private int capacity() {
+		return numbers != null ? numbers.length
+			: customers != null ? customers.length
+			: cents != null ? cents.length
+			: dates != null ? dates.length
+			: paidDates != null ? paidDates.length
+			: Integer.MAX_VALUE;
+	}
+
+	private void grow() {
+		int capacity = capacity() * 2;
+		numbers = numbers != null ? Arrays.copyOf(numbers, capacity) : null;
+		customers = customers != null ? Arrays.copyOf(customers, capacity) : null;
+		cents = cents != null ? Arrays.copyOf(cents, capacity) : null;
+		dates = dates != null ? Arrays.copyOf(dates, capacity) : null;
+		paidDates = paidDates != null ? Arrays.copyOf(paidDates, capacity) : null;
+	}
+
+	/**
+	 * Helper to check that a column was projected and a row exists.
+	 */
+	private void check(Column column, int row) {
+		if (!has(column)) {
+			throw new IllegalStateException
+				("Column " + column + " wasn't projected.");
+		}
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+	public int getNumber(int row) {
+		check(Column.NUMBER, row);
+		return numbers[row];
+	}
+
+	public Customer getCustomer(int row) {
+		check(Column.CUSTOMER, row);
+		return customers[row];
+	}
+
+	public long getCents(int row) {
+		check(Column.AMOUNT, row);
+		return cents[row];
+	}
+
+	public LocalDate getDate(int row) {
+		check(Column.DATE, row);
+		return dates[row];
+	}
+
+	public LocalDate getPaidDate(int row) {
+		check(Column.PAID_DATE, row);
+		return paidDates[row];
+	}
+
+	/**
+	 * Totals the amounts, in cents, by customer; this needs only the
+	 * customer and amount columns.
+	 */
+	public Map<Customer,Long> getTotalCentsByCustomer() {
+		if (!has(Column.CUSTOMER) || !has(Column.AMOUNT)) {
+			throw new IllegalStateException
+				("Totals need the customer and amount columns.");
+		}
+
+		Map<Customer,Long> totals = new HashMap<>();
+		for (int row = 0; row < size; ++row) {
+			totals.merge(customers[row], cents[row], Long::sum);
+		}
+		return totals;
+	}
+}
@@ -0,0 +1,110 @@
+package com.amica.billing.parse;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+
+/**
+ * Says which invoices a caller wants from a parser: unpaid ones only,
+ * those issued in a range of dates, and/or those for certain customers.
+ * Parsers that {@link Parser#parseInvoices(java.io.Reader, java.util.Map,
+ * InvoiceFilter) accept a filter} check it against the raw fields of each
+ * record, cheapest first, and skip records that don't pass before building
+ * any objects for them. Skipped records are not checked for errors, and so
+ * are never rejected.
+ *
+ * A filter is immutable; each of the narrowing methods returns a new one.
+ * It is also a predicate over invoices that have been parsed already.
+ *
+ * @author Will Provost
+ */
+public class InvoiceFilter implements Predicate<Invoice> {
+
+	/**
+	 * The filter that accepts every invoice.
+	 */
+	public static final InvoiceFilter ALL = new InvoiceFilter();
+
+	private boolean unpaidOnly;
+	private LocalDate issuedFrom;
+	private LocalDate issuedTo;
+	private Set<String> customerNames;
+
+	private InvoiceFilter() {}
+
+	private InvoiceFilter(InvoiceFilter other) {
+		this.unpaidOnly = other.unpaidOnly;
+		this.issuedFrom = other.issuedFrom;
+		this.issuedTo = other.issuedTo;
+		this.customerNames = other.customerNames;
+	}
+
+	/**
+	 * Returns a filter that also requires that the invoice not be paid.
+	 */
+	public InvoiceFilter unpaid() {
+		InvoiceFilter result = new InvoiceFilter(this);
+		result.unpaidOnly = true;
+		return result;
+	}
+
+	/**
+	 * Returns a filter that also requires that the invoice be issued
+	 * between the given dates, inclusive. Either date can be null,
+	 * leaving that end of the range open.
+	 */
+	public InvoiceFilter issuedBetween(LocalDate from, LocalDate to) {
+		InvoiceFilter result = new InvoiceFilter(this);
+		result.issuedFrom = from;
+		result.issuedTo = to;
+		return result;
+	}
+
+	/**
+	 * Returns a filter that also requires that the invoice be for one of
+	 * the named customers.
+	 */
+	public InvoiceFilter forCustomers(Collection<String> names) {
+		InvoiceFilter result = new InvoiceFilter(this);
+		result.customerNames = new HashSet<>(names);
+		return result;
+	}
+
+	public boolean isUnpaidOnly() {
+		return unpaidOnly;
+	}
+
+	public boolean hasDateRange() {
+		return issuedFrom != null || issuedTo != null;
+	}
+
+	public boolean hasCustomers() {
+		return customerNames != null;
+	}
+
+	public boolean acceptsPaid(boolean paid) {
+		return !(paid && unpaidOnly);
+	}
+
+	public boolean acceptsIssued(LocalDate date) {
+		return (issuedFrom == null || !date.isBefore(issuedFrom)) &&
+			(issuedTo == null || !date.isAfter(issuedTo));
+	}
+
+	public boolean acceptsCustomer(Customer customer) {
+		return customerNames == null ||
+			customerNames.contains(customer.getName());
+	}
+
+	@Override
+	public boolean test(Invoice invoice) {
+		return acceptsPaid(invoice.getPaidDate() != null) &&
+			acceptsIssued(invoice.getTheDate()) &&
+			acceptsCustomer(invoice.getCustomer());
+	}
+}
@@ -0,0 +1,135 @@
+package com.amica.billing.parse;
+
+import static com.amica.billing.parse.FlatParser.INVOICE_AMOUNT_OFFSET;
+import static com.amica.billing.parse.FlatParser.INVOICE_DATE_OFFSET;
+import static com.amica.billing.parse.FlatParser.INVOICE_FIRST_NAME_OFFSET;
+import static com.amica.billing.parse.FlatParser.INVOICE_LAST_NAME_OFFSET;
+import static com.amica.billing.parse.FlatParser.INVOICE_NUMBER_OFFSET;
+import static com.amica.billing.parse.FlatParser.INVOICE_PAID_DATE_LENGTH;
+import static com.amica.billing.parse.FlatParser.INVOICE_PAID_DATE_OFFSET;
+
+import java.time.LocalDate;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+import com.amica.billing.Money;
+
+/**
+ * Read-only view of one invoice in a {@link FlatInvoiceBuffer}. It holds
+ * only the position of its row, and decodes a field from the raw bytes
+ * each time that field is read. A view can be moved from row to row, so
+ * one view can serve a whole pass over the buffer.
+ *
+ * @author Will Provost
+ */
+public class InvoiceView {
+
+	private FlatInvoiceBuffer buffer;
+	private CharSequence text;
+	private int row;
+	private int start;
+	private int end;
+
+	InvoiceView(FlatInvoiceBuffer buffer) {
+		this.buffer = buffer;
+		this.text = buffer.getText();
+	}
+
+	/**
+	 * Points this view at the given row.
+	 */
+	public InvoiceView moveTo(int row) {
+		this.start = buffer.getStart(row);
+		this.end = buffer.getEnd(row);
+		this.row = row;
+		return this;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public int getNumber() {
+		return Fields.parseInt(text, start + INVOICE_NUMBER_OFFSET,
+				start + INVOICE_FIRST_NAME_OFFSET);
+	}
+
+	/**
+	 * Finds the customer named in this row. The buffer rejects rows
+	 * for unknown customers as it loads, so there is always one.
+	 */
+	public Customer getCustomer() {
+		int firstStart = skipSpaces(start + INVOICE_FIRST_NAME_OFFSET);
+		int lastStart = skipSpaces(start + INVOICE_LAST_NAME_OFFSET);
+		return buffer.getCustomers().get(text,
+			firstStart, trimSpaces(firstStart, start + INVOICE_LAST_NAME_OFFSET),
+			lastStart, trimSpaces(lastStart, start + INVOICE_AMOUNT_OFFSET));
+	}
+
+	public long getCents() {
+		return Money.parseCents(text, start + INVOICE_AMOUNT_OFFSET,
+				start + INVOICE_DATE_OFFSET);
+	}
+
+	public double getAmount() {
+		return Money.toDollars(getCents());
+	}
+
+	public LocalDate getTheDate() {
+		return DateCodec.parseShort(text, start + INVOICE_DATE_OFFSET,
+				start + INVOICE_PAID_DATE_OFFSET);
+	}
+
+	/**
+	 * Tells whether the invoice is paid, by looking for anything but
+	 * spaces where the paid date would be.
+	 */
+	public boolean isPaid() {
+		return skipSpaces(start + INVOICE_PAID_DATE_OFFSET) < end;
+	}
+
+	public LocalDate getPaidDate() {
+		int paidStart = skipSpaces(start + INVOICE_PAID_DATE_OFFSET);
+		int paidEnd = trimSpaces(paidStart, end);
+		return paidEnd - paidStart == INVOICE_PAID_DATE_LENGTH
+			? DateCodec.parseShort(text, paidStart, paidEnd) : null;
+	}
+
+	/**
+	 * The same test as {@link Invoice#isOverdue}, made on epoch days.
+	 */
+	public boolean isOverdue(LocalDate asOf) {
+		LocalDate paidDate = getPaidDate();
+		long endDay = (paidDate != null ? paidDate : asOf).toEpochDay();
+		return endDay > getTheDate().toEpochDay() +
+			getCustomer().getTerms().getDays();
+	}
+
+	/**
+	 * Makes an {@link Invoice} of this row.
+	 */
+	public Invoice toInvoice() {
+		return Invoice.ofCents(getNumber(), getCustomer(), getCents(),
+				getTheDate(), getPaidDate());
+	}
+
+	private int skipSpaces(int position) {
+		while (position < end && text.charAt(position) == ' ') {
+			++position;
+		}
+		return position;
+	}
+
+	private int trimSpaces(int from, int to) {
+		to = Math.min(to, end);
+		while (to > from && text.charAt(to - 1) == ' ') {
+			--to;
+		}
+		return to;
+	}
+
+	@Override
+	public String toString() {
+		return "Invoice view of row " + row;
+	}
+}
@@ -50,8 +50,11 @@ public class JSONParser implements Producer {
 			Map<String, Customer> customers) {
 		try {
 			Invoice[] invoices = mapper.readValue(invoiceReader, Invoice[].class);
+			CustomerIndex index = CustomerIndex.of(customers);
 			for (Invoice invoice : invoices) {
-				invoice.setCustomer(customers.get(invoice.getCustomer().getName()));
+				Customer customer = invoice.getCustomer();
+				invoice.setCustomer(index.get
+						(customer.getFirstName(), customer.getLastName()));
 			}
 			return Stream.of(invoices);
 		} catch (Exception ex) {
@@ -76,4 +79,13 @@ public class JSONParser implements Producer {
 	public void produceInvoices(Stream<Invoice> invoices, Writer writer) {
 		mapper.writeValue(writer, invoices.collect(Collectors.toList()));
 	}
+
+	/**
+	 * The customer in each invoice object is replaced by name,
+	 * so that can wait until the customers are loaded.
+	 */
+	@Override
+	public boolean supportsDeferredCustomers() {
+		return true;
+	}
 }
@@ -0,0 +1,37 @@
+package com.amica.billing.parse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Presents a byte array as characters, one per byte, without copying,
+ * so that single-byte (ASCII or Latin-1) input can be read by routines
+ * written for character sequences.
+ *
+ * @author Will Provost
+ */
+class Latin1 implements CharSequence {
+
+	private byte[] bytes;
+
+	public Latin1(byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	public int length() {
+		return bytes.length;
+	}
+
+	public char charAt(int index) {
+		return (char) (bytes[index] & 0xFF);
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return new String(bytes, start, end - start,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, bytes.length).toString();
+	}
+}
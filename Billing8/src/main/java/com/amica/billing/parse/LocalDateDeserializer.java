@@ -16,7 +16,7 @@ public class LocalDateDeserializer extends StdDeserializer<LocalDate> {
 
 	public LocalDate deserialize(JsonParser parser, DeserializationContext context)
 			throws IOException, JsonProcessingException {
-		return LocalDate.parse(parser.getValueAsString());
+		return DateCodec.parseISO(parser.getValueAsString());
 	}
 
 }
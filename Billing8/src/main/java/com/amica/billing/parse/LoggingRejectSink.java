@@ -0,0 +1,65 @@
+package com.amica.billing.parse;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * The default sink, which logs a warning for each reject, up to a limit
+ * per reason. Past that limit, rejects are only counted, and 
+ * {@link #flush flush()} logs a summary of the counts. Parsers flush
+ * at the end of each parse, and the limit and summary apply to the
+ * rejects since the last flush, so a parser that is used again logs
+ * its new rejects as it did the first time.
+ * 
+ * @author Will Provost
+ */
+public class LoggingRejectSink extends CountingRejectSink {
+
+	public static final int DEFAULT_LIMIT = 10;
+	
+	private Logger log;
+	private int limit;
+	private AtomicLongArray flushed = 
+			new AtomicLongArray(Reason.values().length);
+	
+	public LoggingRejectSink(Logger log) {
+		this(log, DEFAULT_LIMIT);
+	}
+	
+	public LoggingRejectSink(Logger log, int limit) {
+		this.log = log;
+		this.limit = limit;
+	}
+	
+	@Override
+	protected void accept(RecordType type, Reason reason, 
+			String record, long total) {
+		long count = total - flushed.get(reason.ordinal());
+		if (count <= limit) {
+			log.warning(() -> String.format("%s, skipping %s: %s", 
+					reason.getMessage(), type.name().toLowerCase(), record));
+		}
+		if (count == limit) {
+			log.warning(() -> String.format("Further rejects for reason %s " +
+					"will be counted but not logged.", reason));
+		}
+	}
+	
+	/**
+	 * Logs the counts since the last flush for any reasons whose messages 
+	 * have been suppressed, and starts counting again for the limit.
+	 */
+	@Override
+	public synchronized void flush() {
+		for (Map.Entry<Reason,Long> entry : getCounts().entrySet()) {
+			int ordinal = entry.getKey().ordinal();
+			long count = entry.getValue() - flushed.get(ordinal);
+			if (count > limit) {
+				log.warning(() -> String.format("%d records rejected for " +
+						"reason %s.", count, entry.getKey()));
+			}
+			flushed.set(ordinal, entry.getValue());
+		}
+	}
+}
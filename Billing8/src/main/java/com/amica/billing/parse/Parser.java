@@ -2,6 +2,7 @@ package com.amica.billing.parse;
 
 import java.io.Reader;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import com.amica.billing.Customer;
@@ -32,4 +33,86 @@ public interface Parser {
 	 */
 	public Stream<Invoice> parseInvoices(Reader invoiceReader, 
 			Map<String, Customer> customers);
+	
+	/**
+	 * Returns a stream of the {@link Invoice}s that pass the given filter.
+	 * Parsers that can should check the filter against each record's raw
+	 * fields, and skip the record before building anything for it; 
+	 * by default, we filter the invoices once they're parsed.
+	 */
+	public default Stream<Invoice> parseInvoices(Reader invoiceReader, 
+			Map<String, Customer> customers, InvoiceFilter filter) {
+		return parseInvoices(invoiceReader, customers).filter(filter);
+	}
+	
+	/**
+	 * Parses only the given columns of the invoices that pass the given
+	 * filter, into {@link InvoiceColumns}. Parsers that can should decode
+	 * only those fields, plus any the filter needs, and should only reject
+	 * records for problems in the fields they decode; by default, we parse
+	 * whole invoices and keep the columns asked for.
+	 */
+	public default InvoiceColumns parseInvoiceColumns(Reader invoiceReader,
+			Map<String, Customer> customers, 
+			Set<InvoiceColumns.Column> columns, InvoiceFilter filter) {
+		InvoiceColumns result = new InvoiceColumns(columns);
+		parseInvoices(invoiceReader, customers, filter).forEach(result::add);
+		return result;
+	}
+	
+	/**
+	 * Directs records that can't be parsed to the given sink, instead of 
+	 * whatever the parser does with them by default. Parsers that don't
+	 * reject individual records can ignore this.
+	 */
+	public default void setRejectSink(RejectSink rejectSink) {}
+
+	/**
+	 * Returns the sink to which this parser sends rejected records,
+	 * or null if it doesn't reject individual records.
+	 */
+	public default RejectSink getRejectSink() {
+		return null;
+	}
+	
+	/**
+	 * Flushes our reject sink, if we have one, so that anything it holds
+	 * back, such as a summary of rejects, comes out once a parse is done.
+	 */
+	public default void flushRejects() {
+		RejectSink rejectSink = getRejectSink();
+		if (rejectSink != null) {
+			rejectSink.flush();
+		}
+	}
+	
+	/**
+	 * Returns true if this parser looks up customers only by name, and so
+	 * can parse invoices before the customers are loaded, using 
+	 * {@link #parseInvoices(Reader)} and then 
+	 * {@link #resolveInvoices resolveInvoices()}.
+	 */
+	public default boolean supportsDeferredCustomers() {
+		return false;
+	}
+	
+	/**
+	 * First phase of a two-phase load: returns a stream of {@link Invoice}s
+	 * whose customers are {@link DeferredCustomers.Placeholder placeholders}
+	 * that carry only the customer name. This lets invoices be parsed while
+	 * the customers load. 
+	 */
+	public default Stream<Invoice> parseInvoices(Reader invoiceReader) {
+		return parseInvoices(invoiceReader, new DeferredCustomers());
+	}
+	
+	/**
+	 * Second phase of a two-phase load: links invoices from
+	 * {@link #parseInvoices(Reader)} to the loaded customers. Invoices for
+	 * unknown customers are rejected.
+	 */
+	public default Stream<Invoice> resolveInvoices(Stream<Invoice> invoices,
+			Map<String, Customer> customers) {
+		return DeferredCustomers.resolve(invoices, customers, getRejectSink());
+	}
 }
@@ -0,0 +1,93 @@
+package com.amica.billing.parse;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.logging.Level;
+
+import lombok.extern.java.Log;
+
+/**
+ * A sink that writes rejected records to a quarantine file, one per line,
+ * as tab-separated record type, reason code, and the raw record text.
+ * Lines are gathered into batches and written through a large buffer, 
+ * and nothing is logged per record; {@link #flush flush()} logs a one-line 
+ * summary of the counts by reason. This class is thread-safe.
+ * 
+ * @author Will Provost
+ */
+@Log
+public class QuarantineRejectSink extends CountingRejectSink {
+
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	public static final int BUFFER_SIZE = 64 * 1024;
+	
+	private Writer writer;
+	private int batchSize;
+	private StringBuilder batch = new StringBuilder();
+	private int batched;
+	
+	public QuarantineRejectSink(String filename) throws IOException {
+		this(new FileWriter(filename, true), DEFAULT_BATCH_SIZE);
+	}
+	
+	public QuarantineRejectSink(Writer writer) {
+		this(writer, DEFAULT_BATCH_SIZE);
+	}
+	
+	public QuarantineRejectSink(Writer writer, int batchSize) {
+		this.writer = new BufferedWriter(writer, BUFFER_SIZE);
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	protected synchronized void accept(RecordType type, Reason reason, 
+			String record, long count) {
+		batch.append(type).append('\t').append(reason).append('\t')
+			.append(record).append('\n');
+		if (++batched >= batchSize) {
+			writeBatch();
+		}
+	}
+	
+	/**
+	 * Helper to hand the current batch to the buffered writer.
+	 */
+	private void writeBatch() {
+		try {
+			writer.append(batch);
+		} catch (IOException ex) {
+			log.log(Level.WARNING, "Couldn't write to quarantine file; " +
+					batched + " rejects lost.", ex);
+		}
+		batch.setLength(0);
+		batched = 0;
+	}
+	
+	/**
+	 * Writes any partial batch, flushes the file, and logs the counts.
+	 */
+	@Override
+	public synchronized void flush() {
+		writeBatch();
+		try {
+			writer.flush();
+		} catch (IOException ex) {
+			log.log(Level.WARNING, "Couldn't flush quarantine file.", ex);
+		}
+		if (getTotal() != 0) {
+			log.info(() -> "Quarantined records by reason: " + getCounts());
+		}
+	}
+	
+	@Override
+	public synchronized void close() {
+		flush();
+		try {
+			writer.close();
+		} catch (IOException ex) {
+			log.log(Level.WARNING, "Couldn't close quarantine file.", ex);
+		}
+	}
+}
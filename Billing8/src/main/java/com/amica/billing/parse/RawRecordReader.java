@@ -0,0 +1,125 @@
+package com.amica.billing.parse;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that holds on to the text it passes along, so that a parser that
+ * reads through it can recover the raw text of a record from the record's
+ * character position, as given by a library such as Commons CSV that
+ * doesn't keep it. The parser says where each record starts as it goes,
+ * and text before that is dropped in large pieces, so we hold little
+ * more than the parser's own read-ahead buffer.
+ *
+ * @author Will Provost
+ */
+class RawRecordReader extends FilterReader {
+
+	private static final int DROP_THRESHOLD = 1 << 14;
+
+	private StringBuilder text = new StringBuilder();
+	private long textStart;
+	private long recordStart;
+	private Character quote;
+
+	/**
+	 * Reads through the given reader; records may quote line breaks
+	 * with the given character, which can be null.
+	 */
+	public RawRecordReader(Reader in, Character quote) {
+		super(in);
+		this.quote = quote;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int c = super.read();
+		if (c != -1) {
+			text.append((char) c);
+		}
+		return c;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		dropPastText();
+		int count = super.read(buffer, offset, length);
+		if (count > 0) {
+			text.append(buffer, offset, count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long count) throws IOException {
+		char[] buffer = new char[(int) Math.min(count, 8192)];
+		long skipped = 0;
+		int read;
+		while (skipped < count && (read = read(buffer, 0,
+				(int) Math.min(buffer.length, count - skipped))) > 0) {
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int limit) throws IOException {
+		throw new IOException("Mark isn't supported.");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("Reset isn't supported.");
+	}
+
+	/**
+	 * Tells us that the parser has moved on to the record at the given
+	 * position, and so won't ask for any text before it.
+	 */
+	public void startRecord(long position) {
+		recordStart = position;
+	}
+
+	/**
+	 * Returns the raw text of the record at the given position, without
+	 * its line break. The record must be the one most recently
+	 * {@link #startRecord started}.
+	 */
+	public String getRecord(long position) {
+		int start = (int) (position - textStart);
+		if (start < 0 || start > text.length()) {
+			return "";
+		}
+
+		boolean quoted = false;
+		int end = start;
+		while (end < text.length()) {
+			char c = text.charAt(end);
+			if (quote != null && c == quote) {
+				quoted = !quoted;
+			} else if (!quoted && (c == '\n' || c == '\r')) {
+				break;
+			}
+			++end;
+		}
+		return text.substring(start, end);
+	}
+
+	/**
+	 * Helper to let go of text before the current record, once there is
+	 * enough of it to be worth copying what remains.
+	 */
+	private void dropPastText() {
+		int past = (int) Math.min(recordStart - textStart, text.length());
+		if (past >= DROP_THRESHOLD) {
+			text.delete(0, past);
+			textStart += past;
+		}
+	}
+}
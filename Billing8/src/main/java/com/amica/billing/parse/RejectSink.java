@@ -0,0 +1,60 @@
+package com.amica.billing.parse;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Receives the raw text of records that a {@link Parser} couldn't translate
+ * into objects, along with a reason code. Implementations decide what to do 
+ * with them -- count them, log them, write them to a quarantine file --
+ * so that parsers don't have to pay for logging every bad line themselves.
+ * 
+ * @author Will Provost
+ */
+public interface RejectSink extends Closeable {
+
+	enum RecordType { CUSTOMER, INVOICE }
+	
+	enum Reason { 
+		FIELD_COUNT("Incorrect number of fields"), 
+		LENGTH("Incorrect length"), 
+		TERMS("Couldn't parse terms value"), 
+		VALUES("Couldn't parse values"), 
+		UNKNOWN_CUSTOMER("Unknown customer");
+		
+		private String message;
+		
+		private Reason(String message) {
+			this.message = message;
+		}
+		
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	/**
+	 * Accepts one rejected record.
+	 */
+	public void reject(RecordType type, Reason reason, String record);
+	
+	/**
+	 * Returns the number of records rejected so far, for each reason
+	 * that has been seen at least once.
+	 */
+	public Map<Reason,Long> getCounts();
+	
+	/**
+	 * Pushes out anything held back so far, such as a partial batch 
+	 * or a summary of suppressed messages. 
+	 */
+	public default void flush() {}
+	
+	/**
+	 * Flushes, and releases any underlying resources.
+	 */
+	@Override
+	public default void close() {
+		flush();
+	}
+}
@@ -0,0 +1,81 @@
+package com.amica.billing;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.amica.billing.parse.DeferredCustomers.Placeholder;
+
+public class CustomerDictionaryTest {
+
+	private CustomerDictionary dictionary =
+			new CustomerDictionary(Arrays.asList(GOOD_CUSTOMERS));
+
+	@Test
+	public void testIds() {
+		assertThat(dictionary.size(), equalTo(GOOD_CUSTOMERS.length));
+		for (int id = 0; id < GOOD_CUSTOMERS.length; ++id) {
+			assertThat(dictionary.get(id), sameInstance(GOOD_CUSTOMERS[id]));
+			assertThat(dictionary.getName(id),
+				equalTo(GOOD_CUSTOMERS[id].getName()));
+			assertThat(dictionary.idOf(GOOD_CUSTOMERS[id]), equalTo(id));
+		}
+	}
+
+	@Test
+	public void testLookUpByName() {
+		Customer copy = new Customer(GOOD_CUSTOMERS[1].getFirstName(),
+				GOOD_CUSTOMERS[1].getLastName(), Terms.CASH);
+		assertThat(dictionary.idOf(copy), equalTo(1));
+		assertThat(dictionary.idOf(GOOD_CUSTOMERS[2].getName()), equalTo(2));
+		assertThat(dictionary.idOf("Customer Four"), equalTo(-1));
+		assertThat(dictionary.idOf("Customer"), equalTo(-1));
+	}
+
+	@Test
+	public void testLookUpByRanges() {
+		String line = "7,Customer,Two,100.00";
+		assertThat(dictionary.idOf(line, 2, 10, line, 11, 14), equalTo(1));
+		assertThat(dictionary.idOf(line, 2, 10, line, 11, 13), equalTo(-1));
+	}
+
+	@Test
+	public void testAdd() {
+		Customer duplicate = new Customer(GOOD_CUSTOMERS[0].getFirstName(),
+				GOOD_CUSTOMERS[0].getLastName(), Terms.CASH);
+		assertThat(dictionary.add(duplicate), equalTo(0));
+		assertThat(dictionary.get(0), sameInstance(GOOD_CUSTOMERS[0]));
+
+		for (int i = 0; i < 1000; ++i) {
+			Customer customer = new Customer("First" + i, "Last" + i, Terms.CASH);
+			assertThat(dictionary.add(customer), equalTo(i + 3));
+		}
+		assertThat(dictionary.size(), equalTo(1003));
+		assertThat(dictionary.idOf("First777 Last777"), equalTo(780));
+		assertThat(dictionary.getName(1002), equalTo("First999 Last999"));
+		assertThat(dictionary.idOf(GOOD_CUSTOMERS[2]), equalTo(2));
+	}
+
+	@Test
+	public void testMissingName() {
+		Customer placeholder = new Placeholder("Customer One");
+		assertThat(dictionary.idOf(placeholder), equalTo(-1));
+		assertThat(dictionary.idOf(new Customer("Customer", null, Terms.CASH)), 
+			equalTo(-1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddMissingName() {
+		dictionary.add(new Placeholder("Customer Four"));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testBadId() {
+		dictionary.get(GOOD_CUSTOMERS.length);
+	}
+}
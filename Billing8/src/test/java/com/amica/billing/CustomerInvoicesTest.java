@@ -0,0 +1,56 @@
+package com.amica.billing;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class CustomerInvoicesTest {
+
+	private CustomerInvoices index = new CustomerInvoices
+			(Arrays.asList(GOOD_CUSTOMERS), Arrays.asList(GOOD_INVOICES), null);
+
+	@Test
+	public void testInvoicesOf() {
+		assertThat(index.invoicesOf(GOOD_CUSTOMERS[1]),
+			contains(GOOD_INVOICES[1], GOOD_INVOICES[2], GOOD_INVOICES[3]));
+		assertThat(index.invoicesOf(null), empty());
+	}
+
+	@Test
+	public void testAdd() {
+		Customer customer = new Customer("Customer", "Four", Terms.CASH);
+		index.add(customer);
+		assertThat(index.invoicesOf(customer), empty());
+		assertThat(index.positionOf(customer), equalTo(0));
+
+		Invoice invoice = new Invoice(7, customer, 700,
+				LocalDate.of(2021, 1, 9), null);
+		index.add(invoice);
+		assertThat(index.invoicesOf(customer), contains(invoice));
+	}
+
+	@Test
+	public void testOrder() {
+		assertThat(index.streamCustomers().collect(Collectors.toList()),
+			contains(GOOD_CUSTOMERS[0], GOOD_CUSTOMERS[2], GOOD_CUSTOMERS[1]));
+		assertThat(index.positionOf(GOOD_CUSTOMERS[1]), equalTo(2));
+	}
+
+	@Test
+	public void testTotals() {
+		long[] totals = Arrays.stream(GOOD_INVOICES).collect(index.totals());
+		assertThat(index.withVolumes(totals, false)
+				.map(Reporter.CustomerWithVolume::getCents)
+				.collect(Collectors.toList()),
+			contains(10000L, 90000L, 110000L));
+	}
+}
@@ -0,0 +1,94 @@
+package com.amica.billing;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+public class InvoiceMapTest {
+
+	private static Invoice invoice(int number) {
+		return Invoice.ofCents(number, GOOD_INVOICES[0].getCustomer(),
+				number, LocalDate.of(2021, 1, 1), null);
+	}
+
+	private static InvoiceMap mapOf(Invoice... invoices) {
+		InvoiceMap map = new InvoiceMap();
+		for (Invoice invoice : invoices) {
+			map.put(invoice.getNumber(), invoice);
+		}
+		return map;
+	}
+
+	@Test
+	public void testDense() {
+		InvoiceMap map = mapOf(GOOD_INVOICES);
+		assertThat(map.isDense(), equalTo(true));
+		assertThat(map.size(), equalTo(GOOD_INVOICES.length));
+		assertThat(map.getMaxNumber(), equalTo(6));
+		assertThat(map.get(3), sameInstance(GOOD_INVOICES[2]));
+		assertThat(map.get(0), nullValue());
+		assertThat(map.get(7), nullValue());
+		assertThat(map.keySet(), contains(1, 2, 3, 4, 5, 6));
+	}
+
+	@Test
+	public void testSparse() {
+		InvoiceMap map = mapOf(invoice(50), invoice(10), invoice(1000),
+				invoice(7), invoice(11));
+		assertThat(map.isDense(), equalTo(false));
+		assertThat(map.size(), equalTo(5));
+		assertThat(map.getMaxNumber(), equalTo(1000));
+		assertThat(map.get(10).getNumber(), equalTo(10));
+		assertThat(map.containsKey(12), equalTo(false));
+		assertThat(map.keySet(), contains(7, 10, 11, 50, 1000));
+	}
+
+	@Test
+	public void testReplace() {
+		InvoiceMap map = mapOf(GOOD_INVOICES);
+		Invoice replacement = invoice(2);
+		assertThat(map.put(2, replacement), sameInstance(GOOD_INVOICES[1]));
+		assertThat(map.get(2), sameInstance(replacement));
+		assertThat(map.size(), equalTo(GOOD_INVOICES.length));
+		assertThat(map.isDense(), equalTo(true));
+	}
+
+	@Test
+	public void testGrowth() {
+		InvoiceMap dense = new InvoiceMap();
+		InvoiceMap sparse = new InvoiceMap();
+		for (int number = 1; number <= 10000; ++number) {
+			dense.put(number, invoice(number));
+			sparse.put(number * 3, invoice(number * 3));
+		}
+		assertThat(dense.isDense(), equalTo(true));
+		assertThat(dense.get(9999).getNumber(), equalTo(9999));
+		assertThat(sparse.isDense(), equalTo(false));
+		assertThat(sparse.get(9999).getNumber(), equalTo(9999));
+		assertThat(sparse.get(10000), nullValue());
+		assertThat(sparse.getMaxNumber(), equalTo(30000));
+	}
+
+	@Test
+	public void testClear() {
+		InvoiceMap map = mapOf(invoice(5), invoice(3));
+		map.clear();
+		assertThat(map.size(), equalTo(0));
+		assertThat(map.getMaxNumber(), equalTo(0));
+		assertThat(map.isDense(), equalTo(true));
+		map.put(3, invoice(3));
+		assertThat(map.keySet(), contains(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongNumber() {
+		new InvoiceMap().put(7, GOOD_INVOICES[0]);
+	}
+}
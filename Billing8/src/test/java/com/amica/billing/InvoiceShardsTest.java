@@ -0,0 +1,191 @@
+package com.amica.billing;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.parse.CSVParser;
+import com.amica.billing.parse.DataFiles;
+import com.amica.escm.configuration.properties.PropertiesConfiguration;
+
+/**
+ * Unit test for the {@link InvoiceShards} loader, and for sharded input
+ * to the {@link Reporter} and {@link Updater}.
+ *
+ * @author Will Provost
+ */
+public class InvoiceShardsTest {
+
+	public static final String BACKUP_FOLDER = "src/test/resources/data";
+	public static final String STAGE_FOLDER = "stage";
+
+	public static final String CUSTOMER_FILE = STAGE_FOLDER + "/customers.csv";
+	public static final String SHARD1 = STAGE_FOLDER + "/invoices-1.csv";
+	public static final String SHARD2 = STAGE_FOLDER + "/invoices-2.csv.gz";
+	public static final String SHARD3 = STAGE_FOLDER + "/invoices-3.csv";
+	public static final String SHARDS = STAGE_FOLDER + "/invoices-*";
+
+	private Map<String,Customer> customers;
+
+	private static void write(String filename, List<String> lines)
+			throws IOException {
+		try ( Writer writer = DataFiles.openWriter(filename); ) {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write("\n");
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		tearDown();
+
+		new File(STAGE_FOLDER).mkdir();
+		Files.copy(Paths.get(BACKUP_FOLDER + "/customers.csv"),
+				Paths.get(CUSTOMER_FILE));
+		List<String> lines = Files.readAllLines
+				(Paths.get(BACKUP_FOLDER + "/invoices.csv"));
+		write(SHARD1, lines.subList(0, 12));
+		write(SHARD2, lines.subList(12, lines.size()));
+		write(SHARD3, lines.subList(0, 1));
+
+		try ( Reader reader = DataFiles.openReader(CUSTOMER_FILE); ) {
+			customers = new CSVParser().parseCustomers(reader)
+					.collect(Collectors.toMap(Customer::getName,
+							Function.identity()));
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		File outputFolder = new File(STAGE_FOLDER);
+		if (outputFolder.exists()) {
+			for (File file : outputFolder.listFiles()) {
+				file.delete();
+			}
+			outputFolder.delete();
+		}
+	}
+
+	@Test
+	public void testIsSharded() {
+		assertTrue(InvoiceShards.isSharded(SHARDS));
+		assertTrue(InvoiceShards.isSharded(STAGE_FOLDER));
+		assertFalse(InvoiceShards.isSharded(SHARD1));
+	}
+
+	@Test
+	public void testResolve() throws IOException {
+		assertThat(InvoiceShards.resolve(SHARDS), contains
+				(Paths.get(SHARD1).toString(), Paths.get(SHARD2).toString(),
+					Paths.get(SHARD3).toString()));
+		assertThat(InvoiceShards.resolve(STAGE_FOLDER), hasSize(4));
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		InvoiceShards.Result result = new InvoiceShards
+				(filename -> new CSVParser(), 2).load(SHARDS, customers);
+		assertThat(result.getShards(), hasSize(3));
+		assertThat(result.getInvoices().size(), equalTo(23));
+		assertThat(result.getInvoices().get(124).getCustomer(),
+				equalTo(customers.get("Johnny Cash")));
+		assertThat(result.getShardsByInvoice().get(111),
+				equalTo(Paths.get(SHARD1).toString()));
+		assertThat(result.getDuplicates().size(), equalTo(1));
+		assertThat(result.getDuplicates().get(111), contains
+				(Paths.get(SHARD1).toString(), Paths.get(SHARD3).toString()));
+	}
+
+	@Test
+	public void testLoadNoMatches() throws IOException {
+		InvoiceShards.Result result = new InvoiceShards
+				(filename -> new CSVParser(), 2)
+					.load(STAGE_FOLDER + "/nothing-*", customers);
+		assertThat(result.getShards(), hasSize(0));
+		assertThat(result.getInvoices().size(), equalTo(0));
+	}
+
+	@Test
+	public void testReporter() {
+		Properties properties = new Properties();
+		properties.put(Reporter.CUSTOMER_FILE_PROPERTY, CUSTOMER_FILE);
+		properties.put(Reporter.INVOICE_FILE_PROPERTY, SHARDS);
+		Reporter reporter = new Reporter
+				(new PropertiesConfiguration(properties));
+		assertThat(reporter.getInvoices(), hasSize(23));
+		assertThat(reporter.getInvoicesForCustomer("Janis Joplin"), hasSize(3));
+	}
+
+	@Test
+	public void testUpdater() throws IOException {
+		Path untouched = Paths.get(SHARD2);
+		FileTime old = FileTime.fromMillis(0);
+		Files.setLastModifiedTime(untouched, old);
+
+		Updater updater = new Updater(CUSTOMER_FILE, SHARDS);
+		updater.payInvoice(107);
+		updater.createInvoice("Chet Atkins", 777);
+		updater.save();
+
+		assertThat(Files.getLastModifiedTime(untouched), equalTo(old));
+
+		InvoiceShards.Result result = new InvoiceShards
+				(filename -> new CSVParser(), 2).load(SHARDS, customers);
+		assertThat(result.getInvoices().size(), equalTo(24));
+		assertThat(result.getInvoices().get(107).getPaidDate(),
+				equalTo(LocalDate.now()));
+		assertThat(result.getShardsByInvoice().get(125),
+				equalTo(Paths.get(SHARD3).toString()));
+		assertThat(result.getInvoices().get(125).getPaidDate(), nullValue());
+		assertThat(result.getInvoices(), hasKey(111));
+	}
+
+	@Test
+	public void testUpdaterKeepsDuplicates() throws IOException {
+		Updater updater = new Updater(CUSTOMER_FILE, SHARDS);
+		updater.createInvoice("Chet Atkins", 777);
+		updater.save();
+		updater = new Updater(CUSTOMER_FILE, SHARDS);
+		updater.payInvoice(125);
+		updater.save();
+
+		List<String> lines = Files.readAllLines(Paths.get(SHARD3));
+		assertThat(lines, hasSize(2));
+		assertThat(lines.get(0), startsWith("111,"));
+		assertThat(lines.get(1), startsWith("125,"));
+
+		InvoiceShards.Result result = new InvoiceShards
+				(filename -> new CSVParser(), 2).load(SHARDS, customers);
+		assertThat(result.getDuplicates().get(111), contains
+				(Paths.get(SHARD1).toString(), Paths.get(SHARD3).toString()));
+		assertThat(result.getInvoices().get(125).getPaidDate(),
+				equalTo(LocalDate.now()));
+	}
+}
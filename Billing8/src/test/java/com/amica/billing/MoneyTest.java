@@ -0,0 +1,69 @@
+package com.amica.billing;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MoneyTest {
+
+	@Test
+	public void testParseCents() {
+		assertThat(Money.parseCents("1234.56"), equalTo(123456L));
+		assertThat(Money.parseCents("100"), equalTo(10000L));
+		assertThat(Money.parseCents("100.0"), equalTo(10000L));
+		assertThat(Money.parseCents("0.5"), equalTo(50L));
+		assertThat(Money.parseCents(".05"), equalTo(5L));
+		assertThat(Money.parseCents("-0.05"), equalTo(-5L));
+		assertThat(Money.parseCents("+7."), equalTo(700L));
+	}
+
+	@Test
+	public void testParseCents_Rounding() {
+		assertThat(Money.parseCents("0.994"), equalTo(99L));
+		assertThat(Money.parseCents("0.995"), equalTo(100L));
+		assertThat(Money.parseCents("0.9999"), equalTo(100L));
+	}
+
+	@Test
+	public void testParseCents_Range() {
+		assertThat(Money.parseCents("1  1330.00  2", 1, 12), equalTo(133000L));
+	}
+
+	@Test(expected=NumberFormatException.class)
+	public void testParseCents_Empty() {
+		Money.parseCents("  ");
+	}
+
+	@Test(expected=NumberFormatException.class)
+	public void testParseCents_BadCharacter() {
+		Money.parseCents("12x.00");
+	}
+
+	@Test(expected=NumberFormatException.class)
+	public void testParseCents_TooLarge() {
+		Money.parseCents("999999999999999999999");
+	}
+
+	@Test
+	public void testFormat() {
+		assertThat(Money.format(123456), equalTo("1234.56"));
+		assertThat(Money.format(5), equalTo("0.05"));
+		assertThat(Money.format(-150), equalTo("-1.50"));
+		assertThat(Money.format(0), equalTo("0.00"));
+		assertThat(Money.format(Long.MIN_VALUE),
+				equalTo("-92233720368547758.08"));
+	}
+
+	@Test
+	public void testSumIsExact() {
+		Customer customer = new Customer("Customer", "One", Terms.CASH);
+		Invoice[] invoices = new Invoice[1000];
+		for (int i = 0; i < invoices.length; ++i) {
+			invoices[i] = new Invoice(i, customer, 0.1, null, null);
+		}
+		assertThat(Money.sumCents(Arrays.asList(invoices)), equalTo(10000L));
+	}
+}
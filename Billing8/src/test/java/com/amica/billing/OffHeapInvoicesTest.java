@@ -0,0 +1,119 @@
+package com.amica.billing;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapInvoicesTest {
+
+	private OffHeapInvoices invoices;
+
+	@Before
+	public void setUp() {
+		invoices = new OffHeapInvoices(4);
+		for (int i = GOOD_INVOICES.length - 1; i >= 0; --i) {
+			invoices.put(GOOD_INVOICES[i].getNumber(), GOOD_INVOICES[i]);
+		}
+	}
+
+	@Test
+	public void testGet() {
+		assertThat(invoices.size(), equalTo(GOOD_INVOICES.length));
+		assertThat(invoices.getMaxNumber(), equalTo(6));
+		for (Invoice expected : GOOD_INVOICES) {
+			Invoice actual = invoices.get(expected.getNumber());
+			assertThat(actual, samePropertyValuesAs(expected));
+			assertThat(actual, not(sameInstance(expected)));
+			assertThat(actual.getCustomer(), sameInstance(expected.getCustomer()));
+		}
+		assertThat(invoices.get(99), nullValue());
+		assertThat(invoices.get("1"), nullValue());
+		assertThat(invoices.containsKey(1), equalTo(true));
+		assertThat(invoices.containsKey(99), equalTo(false));
+	}
+
+	@Test
+	public void testOrder() {
+		assertThat(invoices.keySet(), contains(1, 2, 3, 4, 5, 6));
+		assertThat(invoices.values().iterator().next().getNumber(), equalTo(1));
+	}
+
+	@Test
+	public void testReplace() {
+		Invoice invoice = invoices.get(1);
+		invoice.setPaidDate(LocalDate.of(2021, 2, 1));
+		assertThat(invoices.get(1).getPaidDate(), nullValue());
+
+		Invoice previous = invoices.put(1, invoice);
+		assertThat(previous.getPaidDate(), nullValue());
+		assertThat(invoices.get(1).getPaidDate(),
+			equalTo(LocalDate.of(2021, 2, 1)));
+		assertThat(invoices.size(), equalTo(GOOD_INVOICES.length));
+	}
+
+	@Test
+	public void testGrowth() {
+		Customer customer = GOOD_INVOICES[0].getCustomer();
+		for (int number = 1000; number < 11000; ++number) {
+			invoices.put(number, Invoice.ofCents(number, customer, number,
+					LocalDate.of(2021, 1, 1), null));
+		}
+		assertThat(invoices.size(), equalTo(10006));
+		assertThat(invoices.get(7777).getCents(), equalTo(7777L));
+		assertThat(invoices.getOffHeapBytes(),
+			equalTo(2502L * 4 * OffHeapInvoices.RECORD_SIZE));
+	}
+
+	@Test
+	public void testMapped() throws Exception {
+		OffHeapInvoices mapped = new OffHeapInvoices
+				(4, Paths.get(System.getProperty("java.io.tmpdir")));
+		for (Invoice invoice : GOOD_INVOICES) {
+			mapped.put(invoice.getNumber(), invoice);
+		}
+		assertThat(mapped.get(6), samePropertyValuesAs(GOOD_INVOICES[5]));
+		assertThat(Files.size(mapped.getFile()),
+			equalTo(2L * 4 * OffHeapInvoices.RECORD_SIZE));
+
+		mapped.clear();
+		mapped.put(1, GOOD_INVOICES[0]);
+		assertThat(mapped.get(1), samePropertyValuesAs(GOOD_INVOICES[0]));
+		assertThat(invoices.getFile(), nullValue());
+	}
+
+	@Test
+	public void testClear() {
+		long bytes = invoices.getOffHeapBytes();
+		invoices.clear();
+		assertThat(invoices.size(), equalTo(0));
+		assertThat(invoices.get(1), nullValue());
+		assertThat(invoices.getMaxNumber(), equalTo(0));
+
+		invoices.put(2, GOOD_INVOICES[1]);
+		assertThat(invoices.keySet(), contains(2));
+		assertThat(invoices.get(2), samePropertyValuesAs(GOOD_INVOICES[1]));
+		assertThat(invoices.getOffHeapBytes(), equalTo(bytes));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongNumber() {
+		invoices.put(7, GOOD_INVOICES[0]);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRemove() {
+		invoices.keySet().iterator().remove();
+	}
+}
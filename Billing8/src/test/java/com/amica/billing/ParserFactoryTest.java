@@ -3,6 +3,8 @@ package com.amica.billing;
 import static com.amica.billing.ParserFactory.createParser;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import java.util.Properties;
@@ -98,4 +100,59 @@ public class ParserFactoryTest {
 		assertThat(createParser(new PropertiesConfiguration(properties), 
 				Parser.Format.JSON), instanceOf(MockParser.class));
 	}
+
+	@Test
+	public void testCreateParser_JSONShared() {
+		assertThat(createParser(Parser.Format.JSON), 
+				sameInstance(createParser(Parser.Format.JSON)));
+	}
+	
+	@Test
+	public void testCreateParser_CSVNotShared() {
+		assertThat(createParser(Parser.Format.CSV), 
+				not(sameInstance(createParser(Parser.Format.CSV))));
+	}
+	
+	@Test
+	public void testCreateParser_MockPropertiesConfigurationCached() {
+		Properties properties = new Properties();
+		properties.put(ParserFactory.PARSER_CLASS_PROPERTY, 
+				MockParser.class.getName());
+		PropertiesConfiguration configuration = 
+				new PropertiesConfiguration(properties);
+		Parser first = createParser(configuration, Parser.Format.JSON);
+		Parser second = createParser(configuration, Parser.Format.JSON);
+		assertThat(second, instanceOf(MockParser.class));
+		assertThat(second, not(sameInstance(first)));
+	}
+	
+	@Test
+	public void testCreateParser_BadParserClass() {
+		Properties properties = new Properties();
+		properties.put(ParserFactory.PARSER_CLASS_PROPERTY, "no.such.Parser");
+		assertThat(createParser(new PropertiesConfiguration(properties), 
+				Parser.Format.FLAT), instanceOf(FlatParser.class));
+	}
+
+	@Test
+	public void testCreateParser_DottedFilename() {
+		assertThat(createParser("invoices.2020.flat"), 
+				instanceOf(FlatParser.class));
+	}
+	
+	@Test
+	public void testDetectFormat_Content() {
+		assertThat(ParserFactory.detectFormat
+				("src/test/resources/data/customers_excel.csv"),
+					equalTo(Parser.Format.EXCEL));
+		assertThat(ParserFactory.detectFormat
+				("src/test/resources/data/invoices_export.csv"),
+					equalTo(Parser.Format.EXPORT));
+	}
+	
+	@Test
+	public void testCreateParser_Content() {
+		assertThat(createParser("src/test/resources/data/invoices.json"), 
+				instanceOf(JSONParser.class));
+	}
 }
@@ -0,0 +1,91 @@
+package com.amica.billing;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.QueryCache.Change;
+
+public class QueryCacheTest {
+
+	public static final Set<Change> ON_PAID = EnumSet.of(Change.INVOICE_PAID);
+	public static final Set<Change> ON_ADDED = EnumSet.of(Change.INVOICE_ADDED);
+
+	private Customer one = new Customer("Customer", "One", Terms.CASH);
+	private Customer two = new Customer("Customer", "Two", Terms.CASH);
+	private QueryCache cache;
+	private int computed;
+
+	@Before
+	public void setUp() {
+		cache = new QueryCache(2);
+		computed = 0;
+	}
+
+	private String get(String query, Customer scope, Set<Change> dependencies,
+			Object... parameters) {
+		return cache.get(query, scope, dependencies,
+				() -> query + (++computed), parameters);
+	}
+
+	@Test
+	public void testHit() {
+		assertThat(get("q", null, ON_PAID, 1), equalTo("q1"));
+		assertThat(get("q", null, ON_PAID, 1), equalTo("q1"));
+		assertThat(get("q", null, ON_PAID, 2), equalTo("q2"));
+		assertThat(cache.getHits(), equalTo(1L));
+		assertThat(cache.getMisses(), equalTo(2L));
+		assertThat(cache.getHitRate(), closeTo(1.0 / 3, 0.0001));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		get("a", null, ON_PAID);
+		get("b", null, ON_PAID);
+		get("a", null, ON_PAID);
+		get("c", null, ON_PAID);
+		assertThat(cache.size(), equalTo(2));
+		assertThat(cache.getEvictions(), equalTo(1L));
+		assertThat(get("a", null, ON_PAID), equalTo("a1"));
+		assertThat(get("b", null, ON_PAID), equalTo("b4"));
+	}
+
+	@Test
+	public void testInvalidateByCustomer() {
+		get("forCustomer", one, ON_PAID, "one");
+		get("forCustomer", two, ON_PAID, "two");
+		cache.invalidate(Change.INVOICE_PAID, one);
+		assertThat(cache.size(), equalTo(1));
+		assertThat(get("forCustomer", two, ON_PAID, "two"),
+				equalTo("forCustomer2"));
+	}
+
+	@Test
+	public void testInvalidateByChange() {
+		get("volumes", null, ON_ADDED);
+		get("overdue", null, ON_PAID);
+		cache.invalidate(Change.INVOICE_PAID, one);
+		assertThat(cache.size(), equalTo(1));
+		assertThat(cache.getInvalidations(), equalTo(1L));
+		assertThat(get("volumes", null, ON_ADDED), equalTo("volumes1"));
+	}
+
+	@Test
+	public void testClear() {
+		get("a", null, ON_PAID);
+		cache.clear();
+		assertThat(cache.size(), equalTo(0));
+		assertThat(get("a", null, ON_PAID), equalTo("a2"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadSize() {
+		new QueryCache(0);
+	}
+}
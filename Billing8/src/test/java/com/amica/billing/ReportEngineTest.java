@@ -0,0 +1,79 @@
+package com.amica.billing;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.Reporter.CustomerWithVolume;
+import com.amica.billing.parse.Parser.Format;
+
+public class ReportEngineTest {
+
+	public static final String INPUT_FOLDER = "src/test/resources/data";
+	public static final LocalDate AS_OF = LocalDate.of(2020, 12, 1);
+
+	private Reporter reporter;
+
+	@Before
+	public void setUp() throws IOException {
+		try (
+			FileReader customerReader =
+					new FileReader(INPUT_FOLDER + "/customers.csv");
+			FileReader invoiceReader =
+					new FileReader(INPUT_FOLDER + "/invoices.csv");
+		) {
+			reporter = new Reporter(customerReader, invoiceReader, Format.CSV);
+		}
+	}
+
+	private void testAllReports(boolean parallel) {
+		ReportEngine engine = new ReportEngine();
+		ReportEngine.Key<SortedMap<Customer,SortedSet<Invoice>>> byCustomer =
+				engine.register(reporter.invoicesByCustomerReport());
+		ReportEngine.Key<SortedSet<Invoice>> overdue =
+				engine.register(reporter.overdueInvoicesReport(AS_OF));
+		ReportEngine.Key<SortedSet<CustomerWithVolume>> byVolume =
+				engine.register(reporter.customersByVolumeReport());
+		ReportEngine.Key<Aging> aging =
+				engine.register(reporter.agingReport(AS_OF));
+
+		ReportEngine.Results results = reporter.runReports(engine, parallel);
+		assertThat(results.get(byCustomer),
+				equalTo(reporter.getInvoicesByCustomer()));
+		assertThat(results.get(byCustomer).firstKey().getName(),
+				equalTo("Chet Atkins"));
+		assertThat(results.get(overdue),
+				contains(reporter.getOverdueInvoices(AS_OF).toArray()));
+		assertThat(results.get(byVolume),
+				contains(reporter.getCustomersByVolume().toArray()));
+		assertThat(results.get(aging).getTotal(),
+				closeTo(reporter.getAging(AS_OF).getTotal(), 0.001));
+	}
+
+	@Test
+	public void testRunReports() {
+		testAllReports(false);
+	}
+
+	@Test
+	public void testRunReportsInParallel() {
+		testAllReports(true);
+	}
+
+	@Test
+	public void testNoReports() {
+		assertThat(reporter.runReports(new ReportEngine(), false),
+				notNullValue());
+	}
+}
@@ -5,14 +5,25 @@ import static com.amica.billing.Reporter.CUSTOMER_FILE_PROPERTY;
 import static com.amica.billing.Reporter.INVOICE_FILE_PROPERTY;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.text.Collator;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -174,4 +185,93 @@ public class ReporterIntegrationTest {
 		
 		testWithMainDataSet(".json", Format.JSON, properties);
 	}
+
+	@Test
+	public void testLazyLoad() throws Exception {
+		Properties properties = new Properties();
+		properties.put(CUSTOMER_FILE_PROPERTY, 
+				"src/test/resources/data/customers.csv");
+		properties.put(INVOICE_FILE_PROPERTY, 
+				"src/test/resources/data/invoices.csv");
+		properties.put(Reporter.LAZY_LOAD_PROPERTY, "true");
+		
+		Reporter reporter = new Reporter(new PropertiesConfiguration(properties));
+		assertThat(reporter.awaitReady(10, TimeUnit.SECONDS), equalTo(true));
+		assertThat(reporter.getStatus(), equalTo(Reporter.Status.READY));
+		assertThat(reporter.getLoadFailure(), nullValue());
+		assertThat(reporter.getInvoicesForCustomer("Janis Joplin"), hasSize(3));
+	}
+
+	@Test
+	public void testLazyLoad_Collator() throws Exception {
+		Properties properties = new Properties();
+		properties.put(CUSTOMER_FILE_PROPERTY, 
+				"src/test/resources/data/customers.csv");
+		properties.put(INVOICE_FILE_PROPERTY, 
+				"src/test/resources/data/invoices.csv");
+		properties.put(Reporter.LAZY_LOAD_PROPERTY, "true");
+		
+		Reporter reporter = new Reporter(new PropertiesConfiguration(properties));
+		Collator collator = Collator.getInstance(Locale.ENGLISH);
+		reporter.setCollator(collator);
+		assertThat(reporter.getStatus(), equalTo(Reporter.Status.READY));
+		
+		List<Customer> expected = new ArrayList<>(reporter.getCustomers());
+		expected.sort(Comparator.comparing(Customer::getLastName, collator)
+				.thenComparing(Customer::getFirstName, collator));
+		assertThat(new ArrayList<>(reporter.getInvoicesByCustomer().keySet()),
+				equalTo(expected));
+	}
+
+	@Test
+	public void testLazyLoadFailure() throws Exception {
+		Properties properties = new Properties();
+		properties.put(CUSTOMER_FILE_PROPERTY, "no/such/customers.csv");
+		properties.put(INVOICE_FILE_PROPERTY, "no/such/invoices.csv");
+		properties.put(PARSER_CLASS_PROPERTY, JSONParser.class.getName());
+		properties.put(Reporter.LAZY_LOAD_PROPERTY, "true");
+		
+		Reporter reporter = new Reporter(new PropertiesConfiguration(properties));
+		assertThat(reporter.awaitReady(10, TimeUnit.SECONDS), equalTo(false));
+		assertThat(reporter.getStatus(), equalTo(Reporter.Status.FAILED));
+		assertThat(reporter.getLoadFailure(), notNullValue());
+		try {
+			reporter.getCustomers();
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException ex) {
+			assertThat(ex.getCause(), sameInstance(reporter.getLoadFailure()));
+		}
+	}
+
+	@Test
+	public void testOwnPool() throws Exception {
+		Properties properties = new Properties();
+		properties.put(CUSTOMER_FILE_PROPERTY, 
+				"src/test/resources/data/customers.csv");
+		properties.put(INVOICE_FILE_PROPERTY, 
+				"src/test/resources/data/invoices.csv");
+		properties.put(Reporter.PARALLELISM_PROPERTY, "2");
+		
+		ForkJoinPool ownPool;
+		try (Reporter reporter = 
+				new Reporter(new PropertiesConfiguration(properties))) {
+			ownPool = reporter.getPool();
+			assertThat(reporter.getCustomersByVolume(), hasSize(13));
+		}
+		assertThat(ownPool.isShutdown(), equalTo(true));
+		
+		ForkJoinPool callersPool = new ForkJoinPool(2);
+		try {
+			try (Reporter reporter = 
+					new Reporter(new PropertiesConfiguration(properties))) {
+				ownPool = reporter.getPool();
+				reporter.setPool(callersPool);
+				assertThat(ownPool.isShutdown(), equalTo(true));
+				assertThat(reporter.getCustomersByVolume(), hasSize(13));
+			}
+			assertThat(callersPool.isShutdown(), equalTo(false));
+		} finally {
+			callersPool.shutdown();
+		}
+	}
 }
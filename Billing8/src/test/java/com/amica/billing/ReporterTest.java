@@ -4,21 +4,32 @@ import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.StringReader;
+import java.text.Collator;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import org.hamcrest.Matcher;
@@ -97,6 +108,23 @@ public class ReporterTest {
 				contains(Arrays.copyOfRange(GOOD_INVOICES, 4, 6)));
 	}
 	
+	@Test
+	public void testReportInvoicesByCustomer_Collated() {
+		Customer dumas = new Customer("Alexandre", "Dumas", Terms.CASH);
+		Customer deGaulle = new Customer("Charles", "de Gaulle", Terms.CASH);
+		MockParser.customers = Stream.of(dumas, deGaulle);
+		MockParser.invoices = Stream.empty();
+		Reporter reporter = new Reporter(new StringReader(CUSTOMER_INPUT),
+				new StringReader(INVOICE_INPUT), Parser.Format.DEFAULT);
+		
+		assertThat(reporter.getInvoicesByCustomer().keySet(),
+				contains(dumas, deGaulle));
+		
+		reporter.setCollator(Collator.getInstance(Locale.ENGLISH));
+		assertThat(reporter.getInvoicesByCustomer().keySet(),
+				contains(deGaulle, dumas));
+	}
+	
 	@Test
 	public void testReportOverdueInvoices() {
 		Iterator<Invoice> invoices = 
@@ -108,6 +136,309 @@ public class ReporterTest {
 		assertThat(invoices.hasNext(), equalTo(false));
 	}
 	
+	@Test
+	public void testStreamInvoicesForCustomer() {
+		assertThat(reporter.streamInvoicesForCustomer("Customer Two")
+				.toArray(), arrayContaining(Arrays.copyOfRange(GOOD_INVOICES, 1, 4)));
+		assertThat(reporter.streamInvoicesForCustomer("Nobody").count(), 
+				equalTo(0L));
+	}
+	
+	@Test
+	public void testPageInvoicesByCustomer() {
+		Page<Map.Entry<Customer,List<Invoice>>> page = 
+				reporter.getInvoicesByCustomer(0, 2);
+		assertThat(page.getItems(), hasSize(2));
+		assertThat(page.getItems().get(0).getKey(), equalTo(GOOD_CUSTOMERS[0]));
+		assertThat(page.getItems().get(1).getKey(), equalTo(GOOD_CUSTOMERS[2]));
+		assertThat(page.getItems().get(1).getValue(), 
+				contains(Arrays.copyOfRange(GOOD_INVOICES, 4, 6)));
+		assertThat(page.isMore(), equalTo(true));
+		
+		page = reporter.getInvoicesByCustomer(page.getNextOffset(), 2);
+		assertThat(page.getOffset(), equalTo(2));
+		assertThat(page.getItems(), hasSize(1));
+		assertThat(page.getItems().get(0).getKey(), equalTo(GOOD_CUSTOMERS[1]));
+		assertThat(page.isMore(), equalTo(false));
+	}
+	
+	@Test
+	public void testPageInvoicesByCustomerAfter() {
+		Page<Map.Entry<Customer,List<Invoice>>> page = 
+				reporter.getInvoicesByCustomerAfter(null, 1);
+		assertThat(page.getItems().get(0).getKey(), equalTo(GOOD_CUSTOMERS[0]));
+		
+		page = reporter.getInvoicesByCustomerAfter
+				(GOOD_CUSTOMERS[0].getName(), 5);
+		assertThat(page.getOffset(), equalTo(1));
+		assertThat(page.getItems(), hasSize(2));
+		assertThat(page.getItems().get(1).getValue(), 
+				contains(Arrays.copyOfRange(GOOD_INVOICES, 1, 4)));
+		assertThat(page.isMore(), equalTo(false));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testPageInvoicesByCustomerAfter_NoSuchCustomer() {
+		reporter.getInvoicesByCustomerAfter("Nobody", 1);
+	}
+	
+	@Test
+	public void testStreamOverdueInvoices() {
+		assertThat(reporter.streamOverdueInvoices(LocalDate.of(2021, 1, 8))
+				.toArray(), arrayContaining(GOOD_INVOICES[3], 
+					GOOD_INVOICES[5], GOOD_INVOICES[0]));
+	}
+	
+	@Test
+	public void testPageOverdueInvoices() {
+		LocalDate asOf = LocalDate.of(2021, 1, 8);
+		Page<Invoice> page = reporter.getOverdueInvoices(asOf, 1, 1);
+		assertThat(page.getItems(), contains(GOOD_INVOICES[5]));
+		assertThat(page.isMore(), equalTo(true));
+		
+		page = reporter.getOverdueInvoicesAfter(asOf, GOOD_INVOICES[5], 5);
+		assertThat(page.getItems(), contains(GOOD_INVOICES[0]));
+		assertThat(page.isMore(), equalTo(false));
+	}
+	
+	@Test
+	public void testPageCustomersByVolume() {
+		Page<CustomerWithVolume> page = reporter.getCustomersByVolume(1, 1);
+		assertThat(page.getItems(), contains
+				(hasNameAndVolume(GOOD_CUSTOMERS[1].getName(), 900)));
+		assertThat(page.isMore(), equalTo(true));
+		assertThat(reporter.getCustomersByVolume(2, 5).isMore(), equalTo(false));
+	}
+	
+	/**
+	 * Helper to make a reporter with a cache, over its own copies of the
+	 * data, so that we can change them.
+	 */
+	private Reporter cachingReporter() {
+		Customer one = new Customer("Customer", "One", Terms.CASH);
+		Customer two = new Customer("Customer", "Two", Terms.CREDIT_30);
+		MockParser.customers = Stream.of(one, two);
+		MockParser.invoices = Stream.of(
+			new Invoice(1, one, 100, LocalDate.of(2021, 1, 4), null),
+			new Invoice(2, two, 200, LocalDate.of(2020, 11, 4), null));
+		Reporter reporter = new Reporter(new StringReader(CUSTOMER_INPUT),
+				new StringReader(INVOICE_INPUT), Parser.Format.DEFAULT);
+		reporter.setQueryCache(new QueryCache(10));
+		return reporter;
+	}
+	
+	@Test
+	public void testCachedQueries() {
+		Reporter reporter = cachingReporter();
+		LocalDate asOf = LocalDate.of(2021, 1, 8);
+		SortedSet<Invoice> overdue = reporter.getOverdueInvoices(asOf);
+		assertThat(reporter.getOverdueInvoices(asOf), sameInstance(overdue));
+		assertThat(reporter.getOverdueInvoices(asOf.plusDays(1)), 
+				not(sameInstance(overdue)));
+		assertThat(reporter.getQueryCache().getHits(), equalTo(1L));
+		assertThat(reporter.getQueryCache().getMisses(), equalTo(2L));
+	}
+	
+	@Test
+	public void testCachedResultsAreReadOnly() {
+		Reporter reporter = cachingReporter();
+		Aging aging = reporter.getAging(LocalDate.of(2021, 1, 8));
+		try {
+			aging.add(new Invoice(3, aging.getCustomers().iterator().next(), 
+					300, LocalDate.of(2021, 1, 4), null));
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException ex) {}
+		
+		SortedSet<Invoice> invoices = reporter.getInvoicesByCustomer()
+				.values().iterator().next();
+		try {
+			invoices.clear();
+			fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException ex) {}
+		assertThat(reporter.getAging(LocalDate.of(2021, 1, 8)).getTotal(), 
+				closeTo(300, 0.001));
+	}
+	
+	@Test
+	public void testPayInvoice_Invalidation() {
+		Reporter reporter = cachingReporter();
+		LocalDate asOf = LocalDate.of(2021, 1, 8);
+		SortedSet<Invoice> forOne = reporter.getInvoicesForCustomer("Customer One");
+		SortedSet<Invoice> forTwo = reporter.getInvoicesForCustomer("Customer Two");
+		SortedSet<CustomerWithVolume> volumes = reporter.getCustomersByVolume();
+		assertThat(reporter.getOverdueInvoices(asOf), hasSize(2));
+		
+		reporter.payInvoice(1, LocalDate.of(2021, 1, 4));
+		assertThat(reporter.getInvoicesForCustomer("Customer One"), 
+				not(sameInstance(forOne)));
+		assertThat(reporter.getInvoicesForCustomer("Customer Two"), 
+				sameInstance(forTwo));
+		assertThat(reporter.getCustomersByVolume(), sameInstance(volumes));
+		assertThat(reporter.getOverdueInvoices(asOf), hasSize(1));
+		assertThat(reporter.getInvoicesPaidBetween(LocalDate.MIN, asOf)
+				.count(), equalTo(1L));
+	}
+	
+	@Test
+	public void testAddInvoice_Invalidation() {
+		Reporter reporter = cachingReporter();
+		SortedSet<Invoice> forTwo = reporter.getInvoicesForCustomer("Customer Two");
+		
+		reporter.addInvoice(new Invoice(3, new Customer
+			("Customer", "One", Terms.CASH), 300, LocalDate.of(2021, 1, 5), null));
+		assertThat(reporter.getInvoicesForCustomer("Customer One"), hasSize(2));
+		assertThat(reporter.getInvoicesForCustomer("Customer Two"), 
+				sameInstance(forTwo));
+		assertThat(reporter.getTopCustomersByVolume(1), contains
+				(hasNameAndVolume("Customer One", 400)));
+		assertThat(reporter.getInvoicesIssuedBetween(LocalDate.of(2021, 1, 5), 
+				LocalDate.of(2021, 1, 5)).count(), equalTo(1L));
+	}
+	
+	@Test
+	public void testAddCustomer() {
+		Reporter reporter = cachingReporter();
+		assertThat(reporter.getInvoicesForCustomer("Customer Three"), empty());
+		
+		reporter.addCustomer(new Customer("Customer", "Three", Terms.CASH));
+		assertThat(reporter.getInvoicesByCustomer().keySet(), hasSize(3));
+		assertThat(reporter.streamInvoicesByCustomer().count(), equalTo(3L));
+		assertThat(reporter.getCustomersByVolume(), hasSize(3));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testPayInvoice_AlreadyPaid() {
+		Reporter reporter = cachingReporter();
+		reporter.payInvoice(1, LocalDate.of(2021, 1, 4));
+		reporter.payInvoice(1, LocalDate.of(2021, 1, 5));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddInvoice_NoSuchCustomer() {
+		cachingReporter().addInvoice(new Invoice(3, new Customer
+			("Customer", "Three", Terms.CASH), 300, LocalDate.now(), null));
+	}
+	
+	@Test
+	public void testGetInvoicesIssuedBetween() {
+		assertThat(reporter.getInvoicesIssuedBetween(LocalDate.of(2020, 12, 1),
+				LocalDate.of(2021, 1, 4)).toArray(), arrayContaining
+			(GOOD_INVOICES[5], GOOD_INVOICES[0], GOOD_INVOICES[1], 
+				GOOD_INVOICES[4]));
+		assertThat(reporter.getInvoicesIssuedBetween(LocalDate.of(2021, 2, 1),
+				LocalDate.of(2021, 3, 1)).count(), equalTo(0L));
+		assertThat(reporter.getInvoicesIssuedBetween(LocalDate.of(2021, 1, 4),
+				LocalDate.of(2020, 12, 1)).count(), equalTo(0L));
+	}
+	
+	@Test
+	public void testGetInvoicesPaidBetween() {
+		assertThat(reporter.getInvoicesPaidBetween(LocalDate.of(2021, 1, 1),
+				LocalDate.of(2021, 1, 7)).toArray(), 
+			arrayContaining(GOOD_INVOICES[1]));
+		assertThat(reporter.getInvoicesPaidBetween(LocalDate.of(2020, 1, 1),
+				LocalDate.of(2021, 12, 31)).toArray(), 
+			arrayContaining(GOOD_INVOICES[1], GOOD_INVOICES[4]));
+		assertThat(reporter.getInvoicesPaidBetween(LocalDate.of(2021, 12, 31),
+				LocalDate.of(2020, 1, 1)).count(), equalTo(0L));
+	}
+	
+	@Test
+	public void testGetAging() {
+		for (boolean parallel : new boolean[] { false, true }) {
+			Aging aging = reporter.getAging(LocalDate.of(2021, 3, 1), parallel);
+			assertThat(aging.getCustomers(), containsInAnyOrder(GOOD_CUSTOMERS));
+			assertThat(aging.getAmount(GOOD_CUSTOMERS[0], 
+					Aging.Bucket.DAYS_31_60), closeTo(100, 0.001));
+			assertThat(aging.getAmount(GOOD_CUSTOMERS[1], 
+					Aging.Bucket.DAYS_1_30), closeTo(300, 0.001));
+			assertThat(aging.getAmount(GOOD_CUSTOMERS[1], 
+					Aging.Bucket.DAYS_61_90), closeTo(400, 0.001));
+			assertThat(aging.getTotal(GOOD_CUSTOMERS[1]), closeTo(700, 0.001));
+			assertThat(aging.getTotal(Aging.Bucket.CURRENT), closeTo(0, 0.001));
+			assertThat(aging.getTotal(Aging.Bucket.DAYS_31_60), 
+					closeTo(700, 0.001));
+			assertThat(aging.getTotal(), closeTo(1400, 0.001));
+		}
+	}
+	
+	@Test
+	public void testPool() {
+		LocalDate asOf = LocalDate.of(2021, 1, 8);
+		SortedMap<Customer,SortedSet<Invoice>> byCustomer = 
+				reporter.getInvoicesByCustomer();
+		SortedSet<Invoice> overdue = reporter.getOverdueInvoices(asOf);
+		SortedSet<CustomerWithVolume> byVolume = reporter.getCustomersByVolume();
+		List<CustomerWithVolume> top = reporter.getTopCustomersByVolume(2);
+		double aged = reporter.getAging(asOf).getTotal();
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			reporter.setPool(pool);
+			assertThat(reporter.getInvoicesByCustomer(), equalTo(byCustomer));
+			assertThat(reporter.getOverdueInvoices(asOf), equalTo(overdue));
+			assertThat(reporter.getCustomersByVolume(), equalTo(byVolume));
+			assertThat(reporter.getTopCustomersByVolume(2), equalTo(top));
+			assertThat(reporter.getAging(asOf).getTotal(), closeTo(aged, 0.001));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testLoadFailure() {
+		MockParser.customers = null;
+		Reporter failed = new Reporter(new StringReader(CUSTOMER_INPUT),
+				new StringReader(INVOICE_INPUT), Parser.Format.DEFAULT);
+		assertThat(failed.getStatus(), equalTo(Reporter.Status.FAILED));
+		assertThat(failed.isReady(), equalTo(false));
+		assertThat(reporter.getStatus(), equalTo(Reporter.Status.READY));
+		try {
+			failed.getOverdueInvoices(LocalDate.of(2021, 1, 8));
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException ex) {
+			assertThat(ex.getCause(), sameInstance(failed.getLoadFailure()));
+		}
+	}
+	
+	@Test
+	public void testAgingBuckets() {
+		assertThat(Aging.Bucket.of(-5), equalTo(Aging.Bucket.CURRENT));
+		assertThat(Aging.Bucket.of(0), equalTo(Aging.Bucket.CURRENT));
+		assertThat(Aging.Bucket.of(1), equalTo(Aging.Bucket.DAYS_1_30));
+		assertThat(Aging.Bucket.of(31), equalTo(Aging.Bucket.DAYS_31_60));
+		assertThat(Aging.Bucket.of(90), equalTo(Aging.Bucket.DAYS_61_90));
+		assertThat(Aging.Bucket.of(91), equalTo(Aging.Bucket.OVER_90));
+	}
+	
+	@Test
+	public void testAgingMerge() {
+		LocalDate asOf = LocalDate.of(2021, 3, 1);
+		Aging left = new Aging(asOf);
+		Aging right = new Aging(asOf);
+		for (int i = 0; i < GOOD_INVOICES.length; ++i) {
+			(i < 3 ? left : right).add(GOOD_INVOICES[i]);
+		}
+		Aging aging = left.merge(right);
+		assertThat(aging.getCustomers(), containsInAnyOrder(GOOD_CUSTOMERS));
+		assertThat(aging.getTotal(GOOD_CUSTOMERS[1]), closeTo(700, 0.001));
+		assertThat(aging.getTotal(GOOD_CUSTOMERS[2]), closeTo(600, 0.001));
+		assertThat(aging.getTotal(), closeTo(1400, 0.001));
+		assertThat(aging.getTotal(new Customer("Customer", "Four", Terms.CASH)), 
+				closeTo(0, 0.001));
+	}
+	
+	@Test
+	public void testAgingSkipsLaterInvoices() {
+		reporter.addInvoice(new Invoice(7, GOOD_CUSTOMERS[0], 700, 
+				LocalDate.of(2021, 3, 2), null));
+		Aging aging = reporter.getAging(LocalDate.of(2021, 3, 1));
+		assertThat(aging.getTotal(GOOD_CUSTOMERS[0]), closeTo(100, 0.001));
+		assertThat(aging.getTotal(), closeTo(1400, 0.001));
+		assertThat(reporter.getAging(LocalDate.of(2021, 3, 2)).getTotal(), 
+				closeTo(2100, 0.001));
+	}
+	
 	public static Matcher<CustomerWithVolume> hasNameAndVolume
 			(String name, double volume) {
 		return allOf(isA(CustomerWithVolume.class),
@@ -125,4 +456,38 @@ public class ReporterTest {
 		assertThat(results.next(), hasNameAndVolume
 				(GOOD_CUSTOMERS[0].getName(), 100));
 	}
+	
+	@Test
+	public void testGetTopCustomersByVolume() {
+		List<CustomerWithVolume> results = reporter.getTopCustomersByVolume(2);
+		assertThat(results, contains(
+				hasNameAndVolume(GOOD_CUSTOMERS[2].getName(), 1100),
+				hasNameAndVolume(GOOD_CUSTOMERS[1].getName(), 900)));
+		assertThat(reporter.getTopCustomersByVolume(0), empty());
+		assertThat(reporter.getTopCustomersByVolume(5, true), hasSize(3));
+	}
+	
+	@Test
+	public void testGetTopCustomersByVolume_Ties() {
+		Customer[] customers = {
+			new Customer("Customer", "D", Terms.CASH),
+			new Customer("Customer", "C", Terms.CASH),
+			new Customer("Customer", "B", Terms.CASH),
+			new Customer("Customer", "A", Terms.CASH)
+		};
+		MockParser.customers = Stream.of(customers);
+		MockParser.invoices = Stream.of(
+			new Invoice(1, customers[0], 100, LocalDate.of(2021, 1, 1), null),
+			new Invoice(2, customers[1], 100, LocalDate.of(2021, 1, 1), null),
+			new Invoice(3, customers[2], 100, LocalDate.of(2021, 1, 1), null));
+		Reporter reporter = new Reporter(new StringReader(CUSTOMER_INPUT),
+				new StringReader(INVOICE_INPUT), Parser.Format.DEFAULT);
+		
+		assertThat(reporter.getCustomersByVolume(), hasSize(4));
+		assertThat(reporter.getTopCustomersByVolume(2, true), contains(
+				hasNameAndVolume("Customer B", 100),
+				hasNameAndVolume("Customer C", 100)));
+		assertThat(reporter.getTopCustomersByVolume(4).get(3),
+				hasNameAndVolume("Customer A", 0));
+	}
 }
@@ -0,0 +1,87 @@
+package com.amica.billing;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import com.amica.billing.TextReporter.Style;
+import com.amica.billing.parse.Parser.Format;
+
+public class TextReporterTest {
+
+	public static final String INPUT_FOLDER = "src/test/resources/data";
+	public static final String EXPECTED_FOLDER = "expected";
+	public static final LocalDate AS_OF = LocalDate.of(2020, 12, 1);
+
+	@FunctionalInterface
+	private interface Report {
+		void write(Reporter reporter, TextReporter out) throws IOException;
+	}
+
+	private static Reporter load(String suffix, Format format)
+			throws IOException {
+		try (
+			FileReader customerReader = new FileReader
+					(INPUT_FOLDER + "/customers" + suffix);
+			FileReader invoiceReader = new FileReader
+					(INPUT_FOLDER + "/invoices" + suffix);
+		) {
+			return new Reporter(customerReader, invoiceReader, format);
+		}
+	}
+
+	private static void check(Reporter reporter, String prefix,
+			String reportName, Report report) throws IOException {
+		for (Style style : Style.values()) {
+			String styleName = style.name().charAt(0) +
+					style.name().substring(1).toLowerCase();
+			StringWriter writer = new StringWriter();
+			report.write(reporter, new TextReporter(writer, style));
+			String expected = new String(Files.readAllBytes(Paths.get
+				(EXPECTED_FOLDER, prefix + "_" + reportName + "_" +
+					styleName + ".txt"))).replaceAll("\\n$", "");
+			String actual = writer.toString().replaceAll("\\n$", "");
+			
+			// Some expected files lack a final newline, and one lacks its title
+			String title = actual.substring(0, actual.indexOf('\n'));
+			assertThat(reportName + " " + styleName, actual, 
+				expected.startsWith(title) 
+					? equalTo(expected) : endsWith("\n\n" + expected));
+		}
+	}
+
+	private static void checkAll(Reporter reporter, String prefix,
+			String customerName, String customerReport) throws IOException {
+		check(reporter, prefix, "InvoicesByCustomer",
+				Reporter::writeInvoicesByCustomer);
+		check(reporter, prefix, "InvoicesByCustomer", (r, out) ->
+				out.writeInvoicesByCustomer(r.getInvoicesByCustomer()));
+		check(reporter, prefix, customerReport, (r, out) ->
+				r.writeInvoicesForCustomer(customerName, out));
+		check(reporter, prefix, "OverdueInvoices", (r, out) ->
+				r.writeOverdueInvoices(AS_OF, out));
+		check(reporter, prefix, "CustomersByVolume",
+				Reporter::writeCustomersByVolume);
+	}
+
+	@Test
+	public void testMainDataSet() throws IOException {
+		checkAll(load(".csv", Format.CSV), "CSV",
+				"Janis Joplin", "JanisInvoices");
+	}
+
+	@Test
+	public void testAlternateDataSet() throws IOException {
+		checkAll(load(".flat", Format.FLAT), "Flat",
+				"Myrna Loy", "MyrnaInvoices");
+	}
+}
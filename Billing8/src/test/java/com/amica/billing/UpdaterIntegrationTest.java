@@ -1,6 +1,8 @@
 package com.amica.billing;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 
 import java.io.BufferedReader;
@@ -8,7 +10,9 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.List;
@@ -16,12 +20,14 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.amica.billing.parse.ApacheCSVParser;
+import com.amica.billing.parse.DataFiles;
 import com.amica.billing.parse.JSONParser;
 import com.amica.billing.parse.Parser;
 import com.amica.billing.parse.Parser.Format;
@@ -165,4 +171,64 @@ public class UpdaterIntegrationTest {
 		updaterConfigured.save();
 		checkInvoices("paid_invoice.csv");
 	}
+
+	@Test
+	public void testOffHeap() throws IOException {
+		Properties properties = new Properties();
+		properties.put(Updater.CUSTOMER_FILE_PROPERTY, 
+				STAGE_FOLDER + "/" + CUSTOMER_FILE);
+		properties.put(Updater.INVOICE_FILE_PROPERTY, 
+				STAGE_FOLDER + "/" + INVOICE_FILE);
+		properties.put(Updater.OFF_HEAP_PROPERTY, "true");
+		Updater updater = new Updater(new PropertiesConfiguration(properties));
+		updater.payInvoice(107);
+		updater.save();
+		checkInvoices("paid_invoice.csv");
+	}
+
+	@Test
+	public void testOffHeapMapped() throws IOException {
+		Properties properties = new Properties();
+		properties.put(Updater.CUSTOMER_FILE_PROPERTY, 
+				STAGE_FOLDER + "/" + CUSTOMER_FILE);
+		properties.put(Updater.INVOICE_FILE_PROPERTY, 
+				STAGE_FOLDER + "/" + INVOICE_FILE);
+		Path directory = Files.createTempDirectory("offHeap");
+		directory.toFile().deleteOnExit();
+		properties.put(Updater.OFF_HEAP_DIRECTORY_PROPERTY, 
+				directory.toString());
+		Updater updater = new Updater(new PropertiesConfiguration(properties));
+		updater.load();
+		updater.load();
+		try ( Stream<Path> files = Files.list(directory); ) {
+			assertThat(files.count(), equalTo(1L));
+		}
+		updater.payInvoice(107);
+		updater.save();
+		checkInvoices("paid_invoice.csv");
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		final String customersFile = STAGE_FOLDER + "/" + CUSTOMER_FILE + ".gz";
+		final String invoicesFile = STAGE_FOLDER + "/" + INVOICE_FILE + ".gz";
+		for (String filename : new String[] { CUSTOMER_FILE, INVOICE_FILE }) {
+			try ( Writer writer = DataFiles.openWriter
+					(STAGE_FOLDER + "/" + filename + ".gz"); ) {
+				writer.write(new String(Files.readAllBytes
+					(Paths.get(BACKUP_FOLDER + "/" + filename))));
+			}
+		}
+		
+		Updater updater = new Updater(customersFile, invoicesFile);
+		updater.createCustomer("Merle", "Haggard", Terms.CASH);
+		updater.payInvoice(107);
+		updater.save();
+		
+		Reporter reporter = new Reporter(DataFiles.openReader(customersFile),
+				DataFiles.openReader(invoicesFile), Format.JSON);
+		assertThat(reporter.getCustomers(), hasSize(14));
+		assertThat(reporter.getInvoicesForCustomer("Glen Campbell").first()
+				.getPaidDate(), equalTo(LocalDate.now()));
+	}
 }
@@ -109,4 +109,56 @@ public class ApacheCSVParserTest {
 		assertThat(writer.toString().replace(".0,",  ","), 
 				equalTo(EXCEL_INVOICE_DATA));
 	}
+
+	@Test
+	public void testRejects_Export() {
+		StringWriter quarantine = new StringWriter();
+		ApacheCSVParser parser = ApacheCSVParser.createExportParser();
+		parser.setRejectSink(new QuarantineRejectSink(quarantine));
+		String data = EXPORT_INVOICE_DATA +
+				"7,\"Customer\",\"Four\",700,\"2021-01-04\",NULL\n" +
+				"8,\"Customer\nOne\",\"One\",800,\"2021-01-04\",NULL\n" +
+				"9,\"Customer\",\"One\",900,\"01/04/2021\",NULL\n";
+		assertThat(parser.parseInvoices(new StringReader(data), 
+				GOOD_CUSTOMERS_MAP).count(), equalTo(6L));
+		parser.getRejectSink().close();
+		assertThat(quarantine.toString(), equalTo(
+			"INVOICE\tUNKNOWN_CUSTOMER\t" +
+				"7,\"Customer\",\"Four\",700,\"2021-01-04\",NULL\n" +
+			"INVOICE\tUNKNOWN_CUSTOMER\t" +
+				"8,\"Customer\nOne\",\"One\",800,\"2021-01-04\",NULL\n" +
+			"INVOICE\tVALUES\t" +
+				"9,\"Customer\",\"One\",900,\"01/04/2021\",NULL\n"));
+	}
+
+	@Test
+	public void testRejects_Deferred() {
+		StringWriter quarantine = new StringWriter();
+		ApacheCSVParser parser = ApacheCSVParser.createExcelParser();
+		parser.setRejectSink(new QuarantineRejectSink(quarantine));
+		String data = EXCEL_INVOICE_DATA + "7,Customer,Four,700,2021-01-04,\n";
+		assertThat(parser.resolveInvoices(parser.parseInvoices
+				(new StringReader(data)), GOOD_CUSTOMERS_MAP).count(), 
+			equalTo(6L));
+		parser.getRejectSink().close();
+		assertThat(quarantine.toString(), equalTo
+			("INVOICE\tUNKNOWN_CUSTOMER\t7,Customer Four,700.00,2021-01-04\n"));
+	}
+
+	@Test
+	public void testRejects_LongInput() {
+		StringWriter quarantine = new StringWriter();
+		ApacheCSVParser parser = ApacheCSVParser.createExcelParser();
+		parser.setRejectSink(new QuarantineRejectSink(quarantine));
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 1000; ++i) {
+			data.append(EXCEL_INVOICE_DATA);
+		}
+		data.append("7,Customer,Four,700,2021-01-04,\n");
+		assertThat(parser.parseInvoices(new StringReader(data.toString()), 
+				GOOD_CUSTOMERS_MAP).count(), equalTo(6000L));
+		parser.getRejectSink().close();
+		assertThat(quarantine.toString(), equalTo
+			("INVOICE\tUNKNOWN_CUSTOMER\t7,Customer,Four,700,2021-01-04,\n"));
+	}
 }
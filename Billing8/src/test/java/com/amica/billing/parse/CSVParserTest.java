@@ -5,12 +5,17 @@ import static com.amica.billing.parse.ParserTestUtility.BAD_INVOICES;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static com.amica.billing.parse.ParserTestUtility.assertFilters;
+import static com.amica.billing.parse.ParserTestUtility.countRejects;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.EnumSet;
 import java.util.stream.Stream;
 
 import org.hamcrest.Matcher;
@@ -20,6 +25,7 @@ import org.junit.Test;
 
 import com.amica.billing.Customer;
 import com.amica.billing.Invoice;
+import com.amica.billing.parse.InvoiceColumns.Column;
 
 public class CSVParserTest {
 
@@ -91,6 +97,38 @@ public class CSVParserTest {
 		assertThat(invoiceArray, arrayContaining(matchersFor(BAD_INVOICES)));
 	}
 	
+	@Test
+	public void testParseInvoices_Filtered() {
+		assertFilters(parser, GOOD_INVOICE_DATA);
+	}
+	
+	@Test
+	public void testParseInvoices_FilteredNotRejected() {
+		assertThat(countRejects(parser, BAD_INVOICE_DATA, InvoiceFilter.ALL),
+				equalTo(3L));
+		assertThat(countRejects(parser, BAD_INVOICE_DATA, 
+				InvoiceFilter.ALL.unpaid()), equalTo(2L));
+	}
+	
+	@Test
+	public void testParseInvoiceColumns() {
+		InvoiceColumns columns = parser.parseInvoiceColumns
+			(new StringReader(GOOD_INVOICE_DATA), GOOD_CUSTOMERS_MAP, 
+				EnumSet.of(Column.CUSTOMER, Column.AMOUNT), InvoiceFilter.ALL);
+		assertThat(columns.size(), equalTo(6));
+		assertThat(columns.getTotalCentsByCustomer().get(GOOD_CUSTOMERS[1]),
+				equalTo(90000L));
+		
+		columns = parser.parseInvoiceColumns
+			(new StringReader(GOOD_INVOICE_DATA), GOOD_CUSTOMERS_MAP, 
+				EnumSet.of(Column.NUMBER, Column.PAID_DATE), InvoiceFilter.ALL
+					.issuedBetween(null, LocalDate.of(2020, 12, 31)));
+		assertThat(columns.size(), equalTo(2));
+		assertThat(columns.getNumber(0), equalTo(4));
+		assertThat(columns.getNumber(1), equalTo(6));
+		assertThat(columns.getPaidDate(0), nullValue());
+	}
+	
 	@Test
 	public void testProduceCustomers() {
 		StringWriter writer = new StringWriter();
@@ -0,0 +1,94 @@
+package com.amica.billing.parse;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Terms;
+
+public class CustomerIndexTest {
+
+	private CustomerIndex index;
+
+	@Before
+	public void setUp() {
+		index = new CustomerIndex(Arrays.asList(GOOD_CUSTOMERS));
+	}
+
+	@Test
+	public void testGetByName() {
+		assertThat(index.size(), equalTo(3));
+		assertThat(index.get("Customer Two"), sameInstance(GOOD_CUSTOMERS[1]));
+		assertThat(index.get("Customer Four"), nullValue());
+	}
+
+	@Test
+	public void testGetByFields() {
+		assertThat(index.get("Customer", "Three"),
+				sameInstance(GOOD_CUSTOMERS[2]));
+		assertThat(index.get(new StringBuilder("Customer"), "One"),
+				sameInstance(GOOD_CUSTOMERS[0]));
+		assertThat(index.get("Customer", "Thre"), nullValue());
+		assertThat(index.get("CustomerT", "wo"), nullValue());
+	}
+
+	@Test
+	public void testGetByRange() {
+		String line = "12,Customer,Two,200";
+		assertThat(index.get(line, 3, 11, 12, 15),
+				sameInstance(GOOD_CUSTOMERS[1]));
+		assertThat(index.get(line, 3, 11, 12, 14), nullValue());
+	}
+
+	@Test
+	public void testGetByBytes() {
+		byte[] line = "   1Customer    One".getBytes(StandardCharsets.US_ASCII);
+		assertThat(index.get(line, 4, 12, 16, 19),
+				sameInstance(GOOD_CUSTOMERS[0]));
+	}
+
+	@Test
+	public void testFallback() {
+		assertThat(CustomerIndex.of(GOOD_CUSTOMERS_MAP).get("Customer", "One"),
+				sameInstance(GOOD_CUSTOMERS[0]));
+		assertThat(CustomerIndex.of(new DeferredCustomers())
+				.get("Customer", "Four"),
+			instanceOf(DeferredCustomers.Placeholder.class));
+	}
+
+	@Test
+	public void testFallbackIsHeld() {
+		CustomerIndex deferred = CustomerIndex.of(new DeferredCustomers());
+		for (int i = 0; i < 100; ++i) {
+			String line = "7,Customer" + i + ",Four";
+			Customer placeholder = deferred.get(line, 2, line.length() - 5,
+					line.length() - 4, line.length());
+			assertThat(deferred.get("Customer" + i, "Four"),
+					sameInstance(placeholder));
+		}
+		assertThat(deferred.size(), equalTo(100));
+		assertThat(CustomerIndex.of(GOOD_CUSTOMERS_MAP).get("Customer", "Five"),
+				nullValue());
+	}
+
+	@Test
+	public void testCachedName() {
+		Customer customer = new Customer("Customer", "Five", Terms.CASH);
+		assertThat(customer.getName(), equalTo("Customer Five"));
+		customer.setLastName("Six");
+		assertThat(customer.getName(), equalTo("Customer Six"));
+		customer.setFirstName("Client");
+		assertThat(customer.getName(), equalTo("Client Six"));
+	}
+}
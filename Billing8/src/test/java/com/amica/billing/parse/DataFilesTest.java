@@ -0,0 +1,166 @@
+package com.amica.billing.parse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataFilesTest {
+
+	public static final String STAGE_FOLDER = "stage";
+	
+	@Before
+	public void setUp() {
+		tearDown();
+		new File(STAGE_FOLDER).mkdir();
+	}
+	
+	@After
+	public void tearDown() {
+		File outputFolder = new File(STAGE_FOLDER);
+		if (outputFolder.exists()) {
+			for (File file : outputFolder.listFiles()) {
+				file.delete();
+			}
+			outputFolder.delete();
+		}
+	}
+	
+	private String roundTrip(String filename) throws IOException {
+		try (Writer writer = DataFiles.openWriter(filename)) {
+			writer.write(CSVParserTest.GOOD_INVOICE_DATA);
+		}
+		try (Reader reader = DataFiles.openReader(filename)) {
+			return new BufferedReader(reader).lines()
+					.collect(Collectors.joining("\n", "", "\n"));
+		}
+	}
+	
+	private Compression detect(String filename) throws IOException {
+		try (InputStream in = new BufferedInputStream
+				(new FileInputStream(filename))) {
+			return Compression.detect(in);
+		}
+	}
+	
+	@Test
+	public void testPlain() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.csv";
+		assertThat(roundTrip(filename), 
+				equalTo(CSVParserTest.GOOD_INVOICE_DATA));
+		assertThat(detect(filename), equalTo(Compression.NONE));
+	}
+	
+	@Test
+	public void testGZIP() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.csv.gz";
+		assertThat(roundTrip(filename), 
+				equalTo(CSVParserTest.GOOD_INVOICE_DATA));
+		assertThat(detect(filename), equalTo(Compression.GZIP));
+	}
+	
+	@Test
+	public void testZIP() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.csv.zip";
+		assertThat(roundTrip(filename), 
+				equalTo(CSVParserTest.GOOD_INVOICE_DATA));
+		assertThat(detect(filename), equalTo(Compression.ZIP));
+	}
+	
+	@Test
+	public void testZIPWithTwoEntries() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.csv.zip";
+		try (ZipOutputStream out = new ZipOutputStream
+				(new FileOutputStream(filename))) {
+			for (String name : new String[] { "invoices.csv", "more.csv" }) {
+				out.putNextEntry(new ZipEntry(name));
+				out.write(CSVParserTest.GOOD_INVOICE_DATA
+						.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		try (Reader reader = DataFiles.openReader(filename)) {
+			char[] buffer = new char[1024];
+			while (reader.read(buffer) != -1) {}
+			fail("Expected IOException");
+		} catch (IOException ex) {
+			assertThat(ex.getMessage(), 
+					equalTo("ZIP archive has more than one entry."));
+		}
+	}
+	
+	@Test
+	public void testBZIP2Signature() {
+		byte[] bzip2 = { 'B', 'Z', 'h', '9', 0x31, 0x41, 0x59 };
+		assertThat(Compression.detect(bzip2, bzip2.length), 
+				equalTo(Compression.BZIP2));
+		
+		byte[] text = "BZh,Customer,One".getBytes(StandardCharsets.US_ASCII);
+		assertThat(Compression.detect(text, Compression.MAGIC_LENGTH), 
+				equalTo(Compression.NONE));
+		byte[] badBlock = { 'B', 'Z', 'h', '9', 'A', 'Y', '&' };
+		assertThat(Compression.detect(badBlock, badBlock.length), 
+				equalTo(Compression.NONE));
+	}
+	
+	@Test
+	public void testDeflate() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.csv.zz";
+		assertThat(roundTrip(filename), 
+				equalTo(CSVParserTest.GOOD_INVOICE_DATA));
+		assertThat(detect(filename), equalTo(Compression.DEFLATE));
+	}
+	
+	@Test
+	public void testPlainTextLikeDeflate() throws IOException {
+		for (String text : new String[] { "x^2 + 1\n", "x\u0001,y,z\n" }) {
+			String filename = STAGE_FOLDER + "/formula.txt";
+			try (Writer writer = DataFiles.openWriter(filename)) {
+				writer.write(text);
+			}
+			assertThat(detect(filename), equalTo(Compression.NONE));
+			try (Reader reader = DataFiles.openReader(filename)) {
+				assertThat(new BufferedReader(reader).readLine(), 
+						equalTo(text.trim()));
+			}
+		}
+	}
+	
+	@Test
+	public void testDetectFormatThroughCompression() throws IOException {
+		String filename = STAGE_FOLDER + "/invoices.data.gz";
+		try (Writer writer = DataFiles.openWriter(filename)) {
+			writer.write(FlatParserTest.GOOD_INVOICE_DATA);
+		}
+		try (InputStream in = new BufferedInputStream
+				(new FileInputStream(filename))) {
+			FormatDetector.Detection detection = FormatDetector.detect(in);
+			assertThat(detection.getCompression(), equalTo(Compression.GZIP));
+			assertThat(detection.getFormat(), equalTo(Parser.Format.FLAT));
+		}
+	}
+	
+	@Test
+	public void testStripExtension() {
+		assertThat(Compression.stripExtension("invoices.csv.GZ"), 
+				equalTo("invoices.csv"));
+		assertThat(Compression.stripExtension("invoices.csv"), 
+				equalTo("invoices.csv"));
+	}
+}
@@ -0,0 +1,85 @@
+package com.amica.billing.parse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+public class DateCodecTest {
+
+	@Test
+	public void testParseISO() {
+		assertThat(DateCodec.parseISO("2020-11-30"),
+				equalTo(LocalDate.of(2020, 11, 30)));
+		assertThat(DateCodec.parseISO("2020-02-29"),
+				equalTo(LocalDate.of(2020, 2, 29)));
+		assertThat(DateCodec.parseISO("x,2021-01-04,y", 2, 12),
+				equalTo(LocalDate.of(2021, 1, 4)));
+	}
+
+	@Test
+	public void testParseShort() {
+		assertThat(DateCodec.parseShort("113020", 0, 6),
+				equalTo(LocalDate.of(2020, 11, 30)));
+		byte[] bytes = "  010421".getBytes(StandardCharsets.US_ASCII);
+		assertThat(DateCodec.parseShort(bytes, 2, 8),
+				equalTo(LocalDate.of(2021, 1, 4)));
+	}
+
+	@Test
+	public void testSharedDates() {
+		assertThat(DateCodec.parseISO("2020-11-30"),
+				sameInstance(DateCodec.parseShort("113020", 0, 6)));
+	}
+
+	@Test
+	public void testEpochDay() {
+		for (LocalDate date = LocalDate.of(1899, 12, 25);
+				date.getYear() < 2101; date = date.plusDays(17)) {
+			assertThat(date.toString(), DateCodec.epochDay(date.getYear(),
+				date.getMonthValue(), date.getDayOfMonth()),
+					equalTo(date.toEpochDay()));
+		}
+		assertThat(DateCodec.parseISOEpochDay("1970-01-02", 0, 10),
+				equalTo(1L));
+	}
+
+	@Test
+	public void testFormat() {
+		LocalDate date = LocalDate.of(2021, 1, 4);
+		assertThat(DateCodec.formatISO(date), equalTo("2021-01-04"));
+		assertThat(DateCodec.formatShort(date), equalTo("010421"));
+		assertThat(DateCodec.formatISO(LocalDate.of(987, 12, 31)),
+				equalTo("0987-12-31"));
+	}
+
+	@Test(expected=DateTimeException.class)
+	public void testBadDay() {
+		DateCodec.parseISO("2021-02-29");
+	}
+
+	@Test(expected=DateTimeException.class)
+	public void testBadMonth() {
+		DateCodec.parseShort("130121", 0, 6);
+	}
+
+	@Test(expected=DateTimeException.class)
+	public void testBadDigits() {
+		DateCodec.parseISO("2021-0a-01");
+	}
+
+	@Test(expected=DateTimeException.class)
+	public void testBadLayout() {
+		DateCodec.parseISO("2021/01/01");
+	}
+
+	@Test(expected=DateTimeException.class)
+	public void testBadLength() {
+		DateCodec.parseISO("2021-1-01");
+	}
+}
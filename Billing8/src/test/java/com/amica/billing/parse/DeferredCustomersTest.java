@@ -0,0 +1,82 @@
+package com.amica.billing.parse;
+
+import static com.amica.billing.parse.ParserTestUtility.BAD_INVOICES;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+import com.amica.billing.parse.RejectSink.Reason;
+
+public class DeferredCustomersTest {
+
+	@Test
+	public void testPlaceholders() {
+		DeferredCustomers customers = new DeferredCustomers();
+		Customer customer = customers.get("Customer One");
+		assertThat(customer, instanceOf(DeferredCustomers.Placeholder.class));
+		assertThat(customer.getName(), equalTo("Customer One"));
+		assertThat(customers.get("Customer One"), sameInstance(customer));
+		assertThat(customers.size(), equalTo(1));
+	}
+
+	@Test
+	public void testTwoPhaseParse() {
+		Parser parser = new CSVParser();
+		List<Invoice> unresolved = parser.parseInvoices(new StringReader
+				(CSVParserTest.GOOD_INVOICE_DATA)).collect(Collectors.toList());
+		assertThat(unresolved.get(0).getCustomer(),
+				instanceOf(DeferredCustomers.Placeholder.class));
+
+		Invoice[] invoices = parser.resolveInvoices
+				(unresolved.stream(), GOOD_CUSTOMERS_MAP)
+					.toArray(Invoice[]::new);
+		assertThat(invoices, arrayContaining(GOOD_INVOICES));
+		assertThat(invoices[0].getCustomer(),
+				sameInstance(GOOD_CUSTOMERS_MAP.get("Customer One")));
+	}
+
+	@Test
+	public void testTwoPhaseParse_UnknownCustomer() {
+		StringWriter quarantine = new StringWriter();
+		QuarantineRejectSink sink = new QuarantineRejectSink(quarantine);
+		Parser parser = new CSVParser();
+		parser.setRejectSink(sink);
+		Invoice[] invoices = parser.resolveInvoices(parser.parseInvoices
+				(new StringReader(CSVParserTest.BAD_INVOICE_DATA)),
+					GOOD_CUSTOMERS_MAP).toArray(Invoice[]::new);
+		assertThat(invoices, arrayContaining(BAD_INVOICES));
+		assertThat(sink.getCounts(), hasEntry(Reason.UNKNOWN_CUSTOMER, 1L));
+		sink.flush();
+		assertThat(quarantine.toString(), containsString
+				("UNKNOWN_CUSTOMER\t4,Customer Four,400.00,2020-11-11\n"));
+	}
+
+	@Test
+	public void testTwoPhaseParse_JSON() {
+		StringWriter writer = new StringWriter();
+		Producer parser = new JSONParser();
+		parser.produceInvoices(Stream.of(GOOD_INVOICES), writer);
+		Invoice[] invoices = parser.resolveInvoices(parser.parseInvoices
+				(new StringReader(writer.toString())), GOOD_CUSTOMERS_MAP)
+					.toArray(Invoice[]::new);
+		assertThat(invoices, arrayContaining(GOOD_INVOICES));
+		assertThat(invoices[5].getCustomer(),
+				sameInstance(GOOD_CUSTOMERS_MAP.get("Customer Three")));
+	}
+}
@@ -0,0 +1,146 @@
+package com.amica.billing.parse;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.amica.billing.Customer;
+import com.amica.billing.Invoice;
+import com.amica.billing.Terms;
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
+
+public class FlatInvoiceBufferTest {
+
+	private static byte[] bytesOf(String data) {
+		return data.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private FlatInvoiceBuffer buffer = new FlatInvoiceBuffer
+			(bytesOf(FlatParserTest.GOOD_INVOICE_DATA), GOOD_CUSTOMERS_MAP, null);
+
+	@Test
+	public void testSize() {
+		assertThat(buffer.size(), equalTo(GOOD_INVOICES.length));
+	}
+
+	@Test
+	public void testViews() {
+		for (int row = 0; row < buffer.size(); ++row) {
+			InvoiceView view = buffer.view(row);
+			Invoice expected = GOOD_INVOICES[row];
+			assertThat(view.getNumber(), equalTo(expected.getNumber()));
+			assertThat(view.getCustomer(), equalTo(expected.getCustomer()));
+			assertThat(view.getCents(), equalTo(expected.getCents()));
+			assertThat(view.getTheDate(), equalTo(expected.getTheDate()));
+			assertThat(view.getPaidDate(), equalTo(expected.getPaidDate()));
+			assertThat(view.isPaid(), equalTo(expected.getPaidDate() != null));
+			assertThat(view.toInvoice(), samePropertyValuesAs(expected));
+		}
+	}
+
+	@Test
+	public void testIsOverdue() {
+		LocalDate asOf = LocalDate.of(2021, 1, 8);
+		buffer.forEach(view -> assertThat(view.isOverdue(asOf),
+			equalTo(GOOD_INVOICES[view.getRow()].isOverdue(asOf))));
+	}
+
+	@Test
+	public void testSelect() {
+		List<Integer> numbers = buffer.select(view -> !view.isPaid())
+				.map(Invoice::getNumber)
+				.collect(Collectors.toList());
+		assertThat(numbers, contains(1, 3, 4, 6));
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		FlatInvoiceBuffer loaded = new FlatParser().loadInvoiceBuffer
+			(new ByteArrayInputStream(bytesOf(FlatParserTest.GOOD_INVOICE_DATA
+				.replace("\n", "\r\n"))), GOOD_CUSTOMERS_MAP);
+		assertThat(loaded.size(), equalTo(GOOD_INVOICES.length));
+		assertThat(loaded.view(0).getPaidDate(), nullValue());
+		assertThat(loaded.view(1).getPaidDate(),
+			equalTo(GOOD_INVOICES[1].getPaidDate()));
+	}
+
+	@Test
+	public void testShortLines() {
+		List<String> rejects = new ArrayList<>();
+		CountingRejectSink sink = new CountingRejectSink() {
+			@Override
+			protected void accept(RecordType type, Reason reason,
+					String record, long count) {
+				rejects.add(record);
+			}
+		};
+		FlatInvoiceBuffer bad = new FlatInvoiceBuffer(bytesOf
+				(FlatParserTest.BAD_INVOICE_DATA), GOOD_CUSTOMERS_MAP, sink);
+		assertThat(bad.size(), equalTo(4));
+		assertThat(rejects.get(0), equalTo("   3Customer    Two"));
+	}
+
+	@Test
+	public void testUnknownCustomer() {
+		CountingRejectSink sink = new CountingRejectSink() {
+			@Override
+			protected void accept(RecordType type, Reason reason,
+					String record, long count) {
+				assertThat(reason, equalTo(Reason.UNKNOWN_CUSTOMER));
+				assertThat(record, startsWith("   5Customer    Four"));
+			}
+		};
+		String data = FlatParserTest.GOOD_INVOICE_DATA.replace
+				("   5Customer    Three   ", "   5Customer    Four    ");
+		FlatInvoiceBuffer buffer = new FlatInvoiceBuffer
+				(bytesOf(data), GOOD_CUSTOMERS_MAP, sink);
+		assertThat(buffer.size(), equalTo(GOOD_INVOICES.length - 1));
+		assertThat(sink.getTotal(), equalTo(1L));
+		List<Integer> numbers = new ArrayList<>();
+		buffer.forEach(view -> {
+				assertThat(view.getCustomer(), notNullValue());
+				numbers.add(view.getNumber());
+			});
+		assertThat(numbers, contains(1, 2, 3, 4, 6));
+	}
+
+	@Test
+	public void testUTF8() {
+		Customer customer = new Customer("Cust\u00f6mer", "One", Terms.CASH);
+		Map<String,Customer> customers = new HashMap<>(GOOD_CUSTOMERS_MAP);
+		customers.put(customer.getName(), customer);
+		String data = FlatParserTest.GOOD_INVOICE_DATA.replace
+				("   1Customer", "   1Cust\u00f6mer");
+		FlatInvoiceBuffer buffer = new FlatInvoiceBuffer
+				(data.getBytes(StandardCharsets.UTF_8), customers, null);
+		assertThat(buffer.size(), equalTo(GOOD_INVOICES.length));
+		assertThat(buffer.view(0).getCustomer(), sameInstance(customer));
+		assertThat(buffer.view(0).getCents(), equalTo(10000L));
+		assertThat(buffer.view(1).getPaidDate(),
+			equalTo(GOOD_INVOICES[1].getPaidDate()));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testBadRow() {
+		buffer.view(GOOD_INVOICES.length);
+	}
+}
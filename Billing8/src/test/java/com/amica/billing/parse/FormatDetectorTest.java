@@ -0,0 +1,108 @@
+package com.amica.billing.parse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.amica.billing.parse.FormatDetector.Detection;
+
+public class FormatDetectorTest {
+
+	public static final String INPUT_FOLDER = "src/test/resources/data";
+	
+	private Parser.Format detectFile(String filename) throws IOException {
+		try (InputStream in = new BufferedInputStream
+				(new FileInputStream(INPUT_FOLDER + "/" + filename))) {
+			return FormatDetector.detect(in).getFormat();
+		}
+	}
+	
+	@Test
+	public void testDetectDataFiles() throws IOException {
+		assertThat(detectFile("customers.csv"), equalTo(Parser.Format.CSV));
+		assertThat(detectFile("invoices.csv"), equalTo(Parser.Format.CSV));
+		assertThat(detectFile("customers.flat"), equalTo(Parser.Format.FLAT));
+		assertThat(detectFile("invoices.flat"), equalTo(Parser.Format.FLAT));
+		assertThat(detectFile("customers_export.csv"), 
+				equalTo(Parser.Format.EXPORT));
+		assertThat(detectFile("invoices_export.csv"), 
+				equalTo(Parser.Format.EXPORT));
+		assertThat(detectFile("customers_excel.csv"), 
+				equalTo(Parser.Format.EXCEL));
+		assertThat(detectFile("invoices_excel.csv"), 
+				equalTo(Parser.Format.EXCEL));
+		assertThat(detectFile("customers.json"), equalTo(Parser.Format.JSON));
+		assertThat(detectFile("invoices_pretty.json"), 
+				equalTo(Parser.Format.JSON));
+	}
+	
+	@Test
+	public void testDetectTestData() {
+		assertThat(FormatDetector.detect(CSVParserTest.GOOD_INVOICE_DATA, false),
+				equalTo(Parser.Format.CSV));
+		assertThat(FormatDetector.detect(FlatParserTest.GOOD_INVOICE_DATA, false),
+				equalTo(Parser.Format.FLAT));
+		assertThat(FormatDetector.detect
+				(ApacheCSVParserTest.EXCEL_INVOICE_DATA, false),
+					equalTo(Parser.Format.EXCEL));
+		assertThat(FormatDetector.detect
+				("\uFEFF" + JSONParserTest.GOOD_CUSTOMER_DATA, false),
+					equalTo(Parser.Format.JSON));
+	}
+	
+	@Test
+	public void testDetectTruncated() {
+		String text = FlatParserTest.GOOD_CUSTOMER_DATA + "Customer   Fo";
+		assertThat(FormatDetector.detect(text, true), 
+				equalTo(Parser.Format.FLAT));
+		assertThat(FormatDetector.detect(text, false), nullValue());
+	}
+	
+	@Test
+	public void testDetectUnknown() {
+		assertThat(FormatDetector.detect("", false), nullValue());
+		assertThat(FormatDetector.detect("Hello, world", false), 
+				equalTo(Parser.Format.CSV));
+		assertThat(FormatDetector.detect("Hello world", false), nullValue());
+	}
+	
+	@Test
+	public void testStreamNotConsumed() throws IOException {
+		byte[] content = CSVParserTest.GOOD_CUSTOMER_DATA
+				.getBytes(StandardCharsets.UTF_8);
+		InputStream in = new BufferedInputStream
+				(new ByteArrayInputStream(content));
+		assertThat(FormatDetector.detect(in).getFormat(), 
+				equalTo(Parser.Format.CSV));
+		assertThat(in.read(), equalTo((int) 'C'));
+	}
+	
+	@Test
+	public void testDetectCompressed() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(CSVParserTest.GOOD_CUSTOMER_DATA
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		Detection detection = FormatDetector.detect
+				(new ByteArrayInputStream(bytes.toByteArray()));
+		assertThat(detection.getCompression(), equalTo(Compression.GZIP));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testMarkNotSupported() throws IOException {
+		FormatDetector.detect(new FileInputStream
+				(INPUT_FOLDER + "/customers.csv"));
+	}
+}
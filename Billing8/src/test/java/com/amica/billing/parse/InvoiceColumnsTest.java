@@ -0,0 +1,60 @@
+package com.amica.billing.parse;
+
+import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
+import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import com.amica.billing.Invoice;
+import com.amica.billing.parse.InvoiceColumns.Column;
+
+public class InvoiceColumnsTest {
+
+	@Test
+	public void testAddAndGrow() {
+		InvoiceColumns columns = new InvoiceColumns
+				(EnumSet.of(Column.NUMBER, Column.DATE));
+		for (int i = 0; i < 100; ++i) {
+			for (Invoice invoice : GOOD_INVOICES) {
+				columns.add(invoice);
+			}
+		}
+		assertThat(columns.size(), equalTo(600));
+		assertThat(columns.getNumber(599), equalTo(6));
+		assertThat(columns.getDate(599), equalTo(GOOD_INVOICES[5].getTheDate()));
+	}
+
+	@Test
+	public void testNoColumns() {
+		InvoiceColumns columns = new InvoiceColumns(EnumSet.noneOf(Column.class));
+		columns.add(GOOD_INVOICES[0]);
+		assertThat(columns.size(), equalTo(1));
+	}
+
+	@Test
+	public void testTotals() {
+		InvoiceColumns columns = new InvoiceColumns
+				(EnumSet.of(Column.CUSTOMER, Column.AMOUNT));
+		for (Invoice invoice : GOOD_INVOICES) {
+			columns.add(invoice);
+		}
+		assertThat(columns.getTotalCentsByCustomer().get(GOOD_CUSTOMERS[2]),
+				equalTo(110000L));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testColumnNotProjected() {
+		InvoiceColumns columns = new InvoiceColumns(EnumSet.of(Column.NUMBER));
+		columns.add(GOOD_INVOICES[0]);
+		columns.getCents(0);
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testNoSuchRow() {
+		new InvoiceColumns(EnumSet.of(Column.NUMBER)).getNumber(0);
+	}
+}
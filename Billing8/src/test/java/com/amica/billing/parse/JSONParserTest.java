@@ -4,6 +4,7 @@ package com.amica.billing.parse;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_CUSTOMERS_MAP;
 import static com.amica.billing.parse.ParserTestUtility.GOOD_INVOICES;
+import static com.amica.billing.parse.ParserTestUtility.assertFilters;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -56,6 +57,11 @@ public class JSONParserTest {
 		assertThat(invoiceArray, arrayContaining(GOOD_INVOICES));
 	}
 	
+	@Test
+	public void testParseInvoices_Filtered() {
+		assertFilters(parser, GOOD_INVOICE_DATA);
+	}
+	
 	@Test
 	public void testProduceCustomers() {
 		StringWriter writer = new StringWriter();
@@ -0,0 +1,69 @@
+package com.amica.billing.parse;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
+
+public class LoggingRejectSinkTest {
+
+	private List<String> messages;
+	private LoggingRejectSink sink;
+	
+	@Before
+	public void setUp() {
+		messages = new ArrayList<>();
+		Logger log = Logger.getAnonymousLogger();
+		log.setUseParentHandlers(false);
+		log.addHandler(new Handler() {
+			public void publish(LogRecord record) {
+				messages.add(record.getMessage());
+			}
+			public void flush() {}
+			public void close() {}
+		});
+		sink = new LoggingRejectSink(log, 1);
+	}
+	
+	private void rejectThree() {
+		for (int i = 0; i < 3; ++i) {
+			sink.reject(RecordType.INVOICE, Reason.VALUES, "record" + i);
+		}
+	}
+	
+	@Test
+	public void testLimit() {
+		rejectThree();
+		sink.flush();
+		assertThat(messages, contains(
+			"Couldn't parse values, skipping invoice: record0",
+			"Further rejects for reason VALUES will be counted but not logged.",
+			"3 records rejected for reason VALUES."));
+	}
+	
+	@Test
+	public void testLimitAfterFlush() {
+		rejectThree();
+		sink.flush();
+		messages.clear();
+		
+		rejectThree();
+		sink.flush();
+		assertThat(messages, contains(
+			"Couldn't parse values, skipping invoice: record0",
+			"Further rejects for reason VALUES will be counted but not logged.",
+			"3 records rejected for reason VALUES."));
+		assertThat(sink.getCounts(), hasEntry(Reason.VALUES, 6L));
+	}
+}
@@ -1,6 +1,12 @@
 package com.amica.billing.parse;
 
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -40,4 +46,43 @@ public class ParserTestUtility {
 		GOOD_INVOICES[1],
 		GOOD_INVOICES[5]
 	};
+	
+	public static List<Integer> numbers(Stream<Invoice> invoices) {
+		return invoices.map(Invoice::getNumber).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Checks that the parser applies invoice filters, given data that
+	 * parses to the {@link #GOOD_INVOICES good invoices}.
+	 */
+	public static void assertFilters(Parser parser, String goodInvoiceData) {
+		InvoiceFilter unpaid = InvoiceFilter.ALL.unpaid();
+		assertThat(numbers(parser.parseInvoices(new StringReader
+				(goodInvoiceData), GOOD_CUSTOMERS_MAP, unpaid)),
+			contains(1, 3, 4, 6));
+		assertThat(numbers(parser.parseInvoices(new StringReader
+				(goodInvoiceData), GOOD_CUSTOMERS_MAP, unpaid.issuedBetween
+					(LocalDate.of(2021, 1, 1), null))),
+			contains(1, 3));
+		assertThat(numbers(parser.parseInvoices(new StringReader
+				(goodInvoiceData), GOOD_CUSTOMERS_MAP, InvoiceFilter.ALL
+					.forCustomers(Arrays.asList("Customer Two")))),
+			contains(2, 3, 4));
+	}
+	
+	/**
+	 * Parses the given invoice data through the given filter, and returns
+	 * the number of records that the parser rejected.
+	 */
+	public static long countRejects(Parser parser, String invoiceData,
+			InvoiceFilter filter) {
+		CountingRejectSink sink = new CountingRejectSink() {
+			protected void accept(RecordType type, Reason reason, 
+					String record, long count) {}
+		};
+		parser.setRejectSink(sink);
+		parser.parseInvoices(new StringReader(invoiceData), 
+				GOOD_CUSTOMERS_MAP, filter).count();
+		return sink.getTotal();
+	}
 }
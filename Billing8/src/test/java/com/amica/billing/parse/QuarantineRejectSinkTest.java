@@ -0,0 +1,78 @@
+package com.amica.billing.parse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amica.billing.parse.RejectSink.Reason;
+import com.amica.billing.parse.RejectSink.RecordType;
+
+public class QuarantineRejectSinkTest {
+
+	private StringWriter writer;
+	private QuarantineRejectSink sink;
+	
+	@Before
+	public void setUp() {
+		writer = new StringWriter();
+		sink = new QuarantineRejectSink(writer, 2);
+	}
+	
+	@Test
+	public void testBatching() {
+		sink.reject(RecordType.CUSTOMER, Reason.TERMS, "A,B,C");
+		assertThat(writer.toString(), equalTo(""));
+		sink.reject(RecordType.INVOICE, Reason.VALUES, "1,A,B");
+		sink.flush();
+		assertThat(writer.toString(), equalTo
+				("CUSTOMER\tTERMS\tA,B,C\nINVOICE\tVALUES\t1,A,B\n"));
+	}
+	
+	@Test
+	public void testClose() {
+		sink.reject(RecordType.CUSTOMER, Reason.TERMS, "A,B,C");
+		sink.close();
+		assertThat(writer.toString(), equalTo("CUSTOMER\tTERMS\tA,B,C\n"));
+	}
+	
+	@Test
+	public void testCSVParserRejects() {
+		CSVParser parser = new CSVParser();
+		parser.setRejectSink(sink);
+		parser.parseCustomers(new StringReader
+				(CSVParserTest.BAD_CUSTOMER_DATA)).count();
+		parser.parseInvoices(new StringReader(CSVParserTest.BAD_INVOICE_DATA), 
+				ParserTestUtility.GOOD_CUSTOMERS_MAP).count();
+		sink.close();
+		
+		assertThat(sink.getCounts(), hasEntry(Reason.TERMS, 1L));
+		assertThat(sink.getCounts(), hasEntry(Reason.FIELD_COUNT, 2L));
+		assertThat(sink.getCounts(), hasEntry(Reason.UNKNOWN_CUSTOMER, 1L));
+		assertThat(sink.getCounts(), hasEntry(Reason.VALUES, 1L));
+		assertThat(sink.getTotal(), equalTo(5L));
+		assertThat(writer.toString(), equalTo(
+				"CUSTOMER\tTERMS\tCustomer,One,CASHY_MONEY\n" +
+				"CUSTOMER\tFIELD_COUNT\tCustomer,Two\n" +
+				"INVOICE\tFIELD_COUNT\t3,Customer,Two,300\n" +
+				"INVOICE\tUNKNOWN_CUSTOMER\t4,Customer,Four,400,2020-11-11\n" +
+				"INVOICE\tVALUES\t5,Customer,Three,500,2021-01-04,20210108\n"));
+	}
+	
+	@Test
+	public void testFlatParserRejects() {
+		FlatParser parser = new FlatParser();
+		parser.setRejectSink(sink);
+		parser.parseInvoices(new StringReader(FlatParserTest.BAD_INVOICE_DATA), 
+				ParserTestUtility.GOOD_CUSTOMERS_MAP).count();
+		
+		assertThat(sink.getCounts(), hasEntry(Reason.LENGTH, 1L));
+		assertThat(sink.getCounts(), hasEntry(Reason.VALUES, 1L));
+		assertThat(sink.getCounts(), hasEntry(Reason.UNKNOWN_CUSTOMER, 1L));
+	}
+}